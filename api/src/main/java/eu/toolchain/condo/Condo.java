@@ -1,17 +1,40 @@
 package eu.toolchain.condo;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 /**
  * Main interface to Condo, the conditional execution engine.
  *
+ * <p>Methods added after the first release have default implementations in terms of the methods
+ * that were there from the start, or of other methods added since, so that existing implementations
+ * keep working. Methods that cannot be built that way, because they would have to block a thread
+ * or need state that is internal to the implementation, throw
+ * {@link UnsupportedOperationException} by default, as documented on each of them.
+ *
  * @param <M> type of metadata
  */
 public interface Condo<M> {
+  /**
+   * Check if this condo is active.
+   *
+   * <p>Callers, like generated wrappers, may bypass an inactive condo entirely and invoke actions
+   * directly. The returned value must not change over the lifetime of a condo.
+   *
+   * @return {@code true} if this condo is active
+   */
+  default boolean isActive() {
+    return true;
+  }
+
   /**
    * Schedule an action with some metadata.
    *
@@ -37,6 +60,55 @@ public interface Condo<M> {
       M metadata, Supplier<? extends CompletionStage<T>> action
   );
 
+  /**
+   * Invoke an action with some metadata on the calling thread.
+   *
+   * <p>If the action is not masked, it is run immediately without being handed to an executor.
+   * Otherwise the calling thread blocks until the action is released, like by being pumped or
+   * unmasked, and then runs it.
+   *
+   * @param metadata metadata to invoke action for
+   * @param action action to invoke
+   * @param <T> type that action returns
+   * @return the value returned by the action
+   * @throws java.util.concurrent.CancellationException if the calling thread is interrupted while
+   * the action is masked, the interrupt flag of the thread is restored
+   * @throws java.util.concurrent.RejectedExecutionException if the action is rejected or dropped
+   * while it is masked
+   */
+  default <T> T invoke(final M metadata, final Supplier<T> action) {
+    final CompletableFuture<Void> released = new CompletableFuture<>();
+    final CompletableFuture<T> done = new CompletableFuture<>();
+
+    final CompletableFuture<T> scheduled = scheduleAsync(metadata, () -> {
+      released.complete(null);
+      return done;
+    });
+
+    try {
+      /* completes when released, or when the action is rejected or dropped */
+      CompletableFuture.anyOf(released, scheduled).get();
+    } catch (final InterruptedException e) {
+      scheduled.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while waiting for the action to be released");
+    } catch (final ExecutionException e) {
+      throw Futures.propagate(e.getCause());
+    }
+
+    final T result;
+
+    try {
+      result = action.get();
+    } catch (final RuntimeException | Error e) {
+      done.completeExceptionally(e);
+      throw e;
+    }
+
+    done.complete(result);
+    return result;
+  }
+
   /**
    * Mask all actions matching the given predicate.
    * Masks prevent actions from being executed.
@@ -64,23 +136,172 @@ public interface Condo<M> {
   /**
    * Allow a single masked action matching the given predicate to be processed.
    *
-   * <p>Will wait until one action has been processed.
+   * <p>Will wait until one action has been released. The released action might not have been
+   * processed yet when this returns.
    *
    * @param predicate Predicate to pump
    * @throws java.lang.InterruptedException waiting is interrupted
    */
   Condo<M> pump(Predicate<M> predicate) throws InterruptedException;
 
+  /**
+   * Allow a single masked action matching the given predicate to be processed.
+   *
+   * <p>Will wait until one action has been released, or the given timeout has elapsed. The
+   * released action might not have been processed yet when this returns.
+   *
+   * @param predicate Predicate to pump
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @throws java.lang.InterruptedException waiting is interrupted
+   * @throws java.util.concurrent.TimeoutException the timeout elapsed
+   */
+  default Condo<M> pump(final Predicate<M> predicate, final long timeout, final TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    Futures.block(pumpAsync(predicate), timeout, unit);
+    return this;
+  }
+
   /**
    * Allow a single masked action matching any of the given predicates to be processed.
    *
-   * <p>This wait method only allows one action to be matched once, per predicate.
+   * <p>This wait method only allows one action to be matched once, per predicate. Will wait until
+   * an action has been released for every predicate.
    *
    * @param predicates predicates to match against
    * @throws java.lang.InterruptedException waiting is interrupted
    */
   Condo<M> pump(Collection<? extends Predicate<M>> predicates) throws InterruptedException;
 
+  /**
+   * Allow a single masked action matching any of the given predicates to be processed.
+   *
+   * <p>This wait method only allows one action to be matched once, per predicate. Will wait until
+   * an action has been released for every predicate.
+   *
+   * @param predicates predicates to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @throws java.lang.InterruptedException waiting is interrupted
+   * @throws java.util.concurrent.TimeoutException the timeout elapsed
+   */
+  default Condo<M> pump(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) throws InterruptedException, TimeoutException {
+    Futures.block(pumpAsync(predicates), timeout, unit);
+    return this;
+  }
+
+  /**
+   * Allow a single masked action matching the given predicate to be processed, without blocking.
+   *
+   * @param predicate Predicate to pump
+   * @return a future that is completed once a matching action has been released, which might be
+   * before it has been processed
+   */
+  default CompletableFuture<Void> pumpAsync(final Predicate<M> predicate) {
+    return pumpAsync(Collections.singletonList(predicate));
+  }
+
+  /**
+   * Allow a single masked action matching the given predicate to be processed, without blocking.
+   *
+   * @param predicate Predicate to pump
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return a future that is completed once a matching action has been released, which might be
+   * before it has been processed, or completed exceptionally with a
+   * {@link java.util.concurrent.TimeoutException} if the timeout elapses
+   */
+  default CompletableFuture<Void> pumpAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    return pumpAsync(Collections.singletonList(predicate), timeout, unit);
+  }
+
+  /**
+   * Allow a single masked action matching any of the given predicates to be processed, without
+   * blocking.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since the
+   * blocking pump methods cannot be waited on without dedicating a thread to them.
+   *
+   * @param predicates predicates to match against
+   * @return a future that is completed once an action for every predicate has been released, which
+   * might be before they have been processed
+   * @throws UnsupportedOperationException if not implemented
+   */
+  default CompletableFuture<Void> pumpAsync(final Collection<? extends Predicate<M>> predicates) {
+    throw new UnsupportedOperationException("pumpAsync");
+  }
+
+  /**
+   * Allow a single masked action matching any of the given predicates to be processed, without
+   * blocking.
+   *
+   * <p>The default implementation applies the timeout to {@link #pumpAsync(Collection)}.
+   *
+   * @param predicates predicates to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return a future that is completed once an action for every predicate has been released, which
+   * might be before they have been processed, or completed exceptionally with a
+   * {@link java.util.concurrent.TimeoutException} if the timeout elapses
+   */
+  default CompletableFuture<Void> pumpAsync(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    return Futures.timeout(pumpAsync(predicates), timeout, unit);
+  }
+
+  /**
+   * Allow up to the given number of masked actions matching the given predicate to be processed.
+   *
+   * <p>Unlike the other pump methods, this only releases actions that are already masked, and
+   * does not wait for them to be processed. Actions are released in the release order of the
+   * condo, which is the order they were masked unless the implementation is configured otherwise,
+   * and are handed over to be processed without waiting for each other.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since the other
+   * pump methods wait for actions to be masked instead of only releasing the ones that already
+   * are.
+   *
+   * @param predicate predicate to match against
+   * @param limit maximum number of actions to release
+   * @return the number of released actions
+   * @throws UnsupportedOperationException if not implemented
+   */
+  default int pump(final Predicate<M> predicate, final int limit) {
+    throw new UnsupportedOperationException("pump");
+  }
+
+  /**
+   * Allow all masked actions matching the given predicate to be processed.
+   *
+   * <p>Only releases actions that are already masked, and does not wait for them to be processed.
+   * Actions are released in the release order of the condo, which is the order they were masked
+   * unless the implementation is configured otherwise, and are handed over to be processed
+   * without waiting for each other.
+   *
+   * @param predicate predicate to match against
+   * @return the number of released actions
+   */
+  default int pumpAll(final Predicate<M> predicate) {
+    return pump(predicate, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Allow all masked actions to be processed.
+   *
+   * <p>Masks are left in place, so actions scheduled after this are still masked. Does not wait
+   * for the released actions to be processed.
+   *
+   * @return the number of released actions
+   */
+  default int drain() {
+    return pumpAll(metadata -> true);
+  }
+
   /**
    * Wait until an action matching the given predicate has been processed.
    *
@@ -89,6 +310,52 @@ public interface Condo<M> {
    */
   Condo<M> waitAny(Predicate<M> predicate) throws InterruptedException;
 
+  /**
+   * Wait until an action matching the given predicate has been processed.
+   *
+   * @param predicate Predicate to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @throws java.lang.InterruptedException waiting is interrupted
+   * @throws java.util.concurrent.TimeoutException the timeout elapsed
+   */
+  default Condo<M> waitAny(final Predicate<M> predicate, final long timeout, final TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    Futures.block(waitAnyAsync(predicate), timeout, unit);
+    return this;
+  }
+
+  /**
+   * Wait until an action matching the given predicate has been processed, without blocking.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since the
+   * blocking wait methods cannot be waited on without dedicating a thread to them.
+   *
+   * @param predicate Predicate to match against
+   * @return a future that is completed once a matching action has been processed
+   * @throws UnsupportedOperationException if not implemented
+   */
+  default CompletableFuture<Void> waitAnyAsync(final Predicate<M> predicate) {
+    throw new UnsupportedOperationException("waitAnyAsync");
+  }
+
+  /**
+   * Wait until an action matching the given predicate has been processed, without blocking.
+   *
+   * <p>The default implementation applies the timeout to {@link #waitAnyAsync(Predicate)}.
+   *
+   * @param predicate Predicate to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return a future that is completed once a matching action has been processed, or completed
+   * exceptionally with a {@link java.util.concurrent.TimeoutException} if the timeout elapses
+   */
+  default CompletableFuture<Void> waitAnyAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    return Futures.timeout(waitAnyAsync(predicate), timeout, unit);
+  }
+
   /**
    * Wait until an action matching the given predicate has been processed.
    *
@@ -99,6 +366,22 @@ public interface Condo<M> {
    */
   Condo<M> waitOnce(Predicate<M> predicate) throws InterruptedException;
 
+  /**
+   * Wait until an action matching the given predicate has been processed.
+   *
+   * <p>This wait method only allows one action to be matched once.
+   *
+   * @param predicate Predicate to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @throws java.lang.InterruptedException waiting is interrupted
+   * @throws java.util.concurrent.TimeoutException the timeout elapsed
+   */
+  default Condo<M> waitOnce(final Predicate<M> predicate, final long timeout, final TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    return waitOnce(Collections.singletonList(predicate), timeout, unit);
+  }
+
   /**
    * Wait until actions match a collection of predicate.
    *
@@ -110,4 +393,122 @@ public interface Condo<M> {
   Condo<M> waitOnce(
       final Collection<? extends Predicate<M>> predicates
   ) throws InterruptedException;
+
+  /**
+   * Wait until actions match a collection of predicate.
+   *
+   * <p>This wait method only allows one action to be matched once, per predicate.
+   *
+   * @param predicates predicates to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @throws java.lang.InterruptedException waiting is interrupted
+   * @throws java.util.concurrent.TimeoutException the timeout elapsed
+   */
+  default Condo<M> waitOnce(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) throws InterruptedException, TimeoutException {
+    Futures.block(waitOnceAsync(predicates), timeout, unit);
+    return this;
+  }
+
+  /**
+   * Wait until an action matching the given predicate has been processed, without blocking.
+   *
+   * <p>This wait method only allows one action to be matched once.
+   *
+   * @param predicate Predicate to match against
+   * @return a future that is completed once a matching action has been processed
+   */
+  default CompletableFuture<Void> waitOnceAsync(final Predicate<M> predicate) {
+    return waitOnceAsync(Collections.singletonList(predicate));
+  }
+
+  /**
+   * Wait until an action matching the given predicate has been processed, without blocking.
+   *
+   * <p>This wait method only allows one action to be matched once.
+   *
+   * @param predicate Predicate to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return a future that is completed once a matching action has been processed, or completed
+   * exceptionally with a {@link java.util.concurrent.TimeoutException} if the timeout elapses
+   */
+  default CompletableFuture<Void> waitOnceAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    return waitOnceAsync(Collections.singletonList(predicate), timeout, unit);
+  }
+
+  /**
+   * Wait until actions match a collection of predicate, without blocking.
+   *
+   * <p>This wait method only allows one action to be matched once, per predicate.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since the
+   * blocking wait methods cannot be waited on without dedicating a thread to them.
+   *
+   * @param predicates predicates to match against
+   * @return a future that is completed once an action for every predicate has been processed
+   * @throws UnsupportedOperationException if not implemented
+   */
+  default CompletableFuture<Void> waitOnceAsync(
+      final Collection<? extends Predicate<M>> predicates
+  ) {
+    throw new UnsupportedOperationException("waitOnceAsync");
+  }
+
+  /**
+   * Wait until actions match a collection of predicate, without blocking.
+   *
+   * <p>This wait method only allows one action to be matched once, per predicate.
+   *
+   * <p>The default implementation applies the timeout to {@link #waitOnceAsync(Collection)}.
+   *
+   * @param predicates predicates to match against
+   * @param timeout maximum time to wait
+   * @param unit unit of the timeout
+   * @return a future that is completed once an action for every predicate has been processed, or
+   * completed exceptionally with a {@link java.util.concurrent.TimeoutException} if the timeout
+   * elapses
+   */
+  default CompletableFuture<Void> waitOnceAsync(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    return Futures.timeout(waitOnceAsync(predicates), timeout, unit);
+  }
+
+  /**
+   * Create a child condo, scoped to a single scenario like a request or a tenant.
+   *
+   * <p>The scope shares the configuration and executor of this condo, and inherits every mask of
+   * this condo for as long as they are in place. Masks, pumps and waits in the scope only affect
+   * the scope. Actions processed in the scope are also reported to the waits of this condo.
+   *
+   * <p>Closing the scope drops all of its deferred actions at once, see
+   * {@link ScopedCondo#close()}.
+   *
+   * <p>The default implementation throws {@link UnsupportedOperationException}, since a scope
+   * needs access to the deferred actions of this condo.
+   *
+   * @return a new scope
+   * @throws UnsupportedOperationException if not implemented
+   */
+  default ScopedCondo<M> scope() {
+    throw new UnsupportedOperationException("scope");
+  }
+
+  /**
+   * Get a condo which is not active.
+   *
+   * <p>Scheduled actions are invoked directly on the calling thread, and masking, pumping or
+   * waiting is not supported.
+   *
+   * @param <M> type of metadata
+   * @return an inactive condo
+   */
+  static <M> Condo<M> disabled() {
+    return DisabledCondo.instance();
+  }
 }
@@ -0,0 +1,232 @@
+package eu.toolchain.condo;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A condo which is not active, and invokes every scheduled action directly.
+ *
+ * <p>A disabled condo is its own scope, and closing it does nothing.
+ *
+ * @param <M> type of metadata
+ * @see Condo#disabled()
+ */
+final class DisabledCondo<M> implements ScopedCondo<M> {
+  @SuppressWarnings("rawtypes")
+  private static final DisabledCondo INSTANCE = new DisabledCondo();
+
+  private DisabledCondo() {
+  }
+
+  @Override
+  public boolean isActive() {
+    return false;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> schedule(final M metadata, final Supplier<T> action) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    try {
+      future.complete(action.get());
+    } catch (final Exception e) {
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> scheduleAsync(
+      final M metadata, final Supplier<? extends CompletionStage<T>> action
+  ) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    final CompletionStage<T> stage;
+
+    try {
+      stage = action.get();
+    } catch (final Exception e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    stage.whenComplete((result, e) -> {
+      if (e != null) {
+        future.completeExceptionally(e);
+      } else {
+        future.complete(result);
+      }
+    });
+
+    return future;
+  }
+
+  @Override
+  public <T> T invoke(final M metadata, final Supplier<T> action) {
+    return action.get();
+  }
+
+  @Override
+  public ScopedCondo<M> scope() {
+    return this;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public Condo<M> mask(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> unmask(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> pump(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> pump(final Predicate<M> predicate, final long timeout, final TimeUnit unit) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> pump(final Collection<? extends Predicate<M>> predicates) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> pump(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> pumpAsync(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> pumpAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> pumpAsync(final Collection<? extends Predicate<M>> predicates) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> pumpAsync(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public int pump(final Predicate<M> predicate, final int limit) {
+    throw unsupported();
+  }
+
+  @Override
+  public int pumpAll(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public int drain() {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> waitAny(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> waitAny(final Predicate<M> predicate, final long timeout, final TimeUnit unit) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> waitAnyAsync(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> waitAnyAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> waitOnce(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> waitOnce(final Predicate<M> predicate, final long timeout, final TimeUnit unit) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> waitOnce(final Collection<? extends Predicate<M>> predicates) {
+    throw unsupported();
+  }
+
+  @Override
+  public Condo<M> waitOnce(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> waitOnceAsync(final Predicate<M> predicate) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> waitOnceAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> waitOnceAsync(
+      final Collection<? extends Predicate<M>> predicates
+  ) {
+    throw unsupported();
+  }
+
+  @Override
+  public CompletableFuture<Void> waitOnceAsync(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    throw unsupported();
+  }
+
+  @SuppressWarnings("unchecked")
+  static <M> DisabledCondo<M> instance() {
+    return (DisabledCondo<M>) INSTANCE;
+  }
+
+  private static UnsupportedOperationException unsupported() {
+    return new UnsupportedOperationException("Condo is disabled");
+  }
+}
@@ -0,0 +1,55 @@
+package eu.toolchain.condo;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * A predicate that only matches metadata which is equal to a given value.
+ *
+ * <p>Implementations of {@link Condo} may index masks, pumps and waits made up of exact predicates
+ * by the hash code of their value, so that matching metadata against them does not require testing
+ * every one of them. The metadata must therefore implement {@link Object#equals(Object)} and
+ * {@link Object#hashCode()} consistently, like metadata generated by {@code @AutoCondo} does.
+ *
+ * <p>Exact predicates are like all other predicates compared using reference equality when
+ * unmasking.
+ *
+ * @param <M> type of metadata
+ */
+public final class ExactPredicate<M> implements Predicate<M> {
+  private final M value;
+
+  private ExactPredicate(final M value) {
+    this.value = value;
+  }
+
+  /**
+   * The value that matched metadata is equal to.
+   *
+   * @return the value to match
+   */
+  public M value() {
+    return value;
+  }
+
+  @Override
+  public boolean test(final M metadata) {
+    return value.equals(metadata);
+  }
+
+  @Override
+  public String toString() {
+    return "ExactPredicate(value=" + value + ")";
+  }
+
+  /**
+   * Build a predicate that only matches metadata which is equal to the given value.
+   *
+   * @param value value to match
+   * @param <M> type of metadata
+   * @return a new exact predicate
+   */
+  public static <M> ExactPredicate<M> of(final M value) {
+    return new ExactPredicate<>(Objects.requireNonNull(value, "value"));
+  }
+}
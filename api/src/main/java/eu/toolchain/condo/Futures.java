@@ -0,0 +1,115 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for blocking on futures, used by the default methods of {@link Condo}.
+ */
+final class Futures {
+  private Futures() {
+  }
+
+  /**
+   * Complete the given future exceptionally with a {@link TimeoutException} if it has not been
+   * completed before the given timeout.
+   *
+   * <p>Timeouts are scheduled on a single shared daemon thread, which is started the first time a
+   * timeout is needed.
+   *
+   * @param future future to time out
+   * @param timeout timeout to apply
+   * @param unit unit of the timeout
+   * @return the given future
+   */
+  static <T> CompletableFuture<T> timeout(
+      final CompletableFuture<T> future, final long timeout, final TimeUnit unit
+  ) {
+    if (future.isDone()) {
+      return future;
+    }
+
+    final ScheduledFuture<?> task = Timer.INSTANCE.schedule(() -> {
+      future.completeExceptionally(
+          new TimeoutException("Timed out after " + timeout + " " + unit));
+    }, timeout, unit);
+
+    future.whenComplete((result, e) -> task.cancel(false));
+    return future;
+  }
+
+  /**
+   * Block until the given future is completed.
+   *
+   * @param future future to block on
+   * @throws InterruptedException if blocking is interrupted, the future will be cancelled
+   */
+  static void block(final CompletableFuture<?> future) throws InterruptedException {
+    try {
+      future.get();
+    } catch (final InterruptedException e) {
+      future.cancel(false);
+      throw e;
+    } catch (final ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Block until the given future is completed, or the timeout elapses.
+   *
+   * @param future future to block on
+   * @param timeout timeout to apply
+   * @param unit unit of the timeout
+   * @throws InterruptedException if blocking is interrupted, the future will be cancelled
+   * @throws TimeoutException if the timeout elapses, the future will be cancelled
+   */
+  static void block(final CompletableFuture<?> future, final long timeout, final TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    try {
+      future.get(timeout, unit);
+    } catch (final InterruptedException | TimeoutException e) {
+      future.cancel(false);
+      throw e;
+    } catch (final ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Rethrow errors, and wrap checked exceptions.
+   *
+   * @param cause cause to propagate
+   * @return an unchecked exception to throw
+   */
+  static RuntimeException propagate(final Throwable cause) {
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+
+    return new IllegalStateException(cause);
+  }
+
+  /**
+   * Holder of the shared timer, so that it is only started when used.
+   */
+  private static final class Timer {
+    static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, r -> {
+      final Thread thread = new Thread(r, "condo-timeout");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    static {
+      INSTANCE.setRemoveOnCancelPolicy(true);
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package eu.toolchain.condo;
+
+/**
+ * A condo which can be closed, like a scope created through {@link Condo#scope()}.
+ *
+ * @param <M> type of metadata
+ */
+public interface ScopedCondo<M> extends Condo<M>, AutoCloseable {
+  /**
+   * Close this condo, and every scope created from it.
+   *
+   * <p>Every deferred action is dropped and its future is cancelled, without running it. Actions
+   * scheduled after the condo has been closed are rejected with a
+   * {@link java.util.concurrent.RejectedExecutionException}. Actions which are already running are
+   * not affected. Closing a condo more than once does nothing.
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,77 @@
+package eu.toolchain.condo;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.lang.reflect.Modifier;
+import java.util.function.Predicate;
+
+/**
+ * A predicate that only matches metadata of one concrete type.
+ *
+ * <p>Implementations of {@link Condo} may use the type to partition masks, pumps and waits, so
+ * that the predicate is never evaluated for metadata of other types.
+ *
+ * <p>Typed predicates can be used anywhere a predicate is accepted, and are like all other
+ * predicates compared using reference equality when unmasking.
+ *
+ * @param <M> type of metadata
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TypedPredicate<M> implements Predicate<M> {
+  private final Class<? extends M> type;
+  private final Predicate<M> predicate;
+
+  /**
+   * The concrete type of metadata matched by this predicate.
+   *
+   * @return the type of metadata matched
+   */
+  public Class<? extends M> type() {
+    return type;
+  }
+
+  @Override
+  public boolean test(final M metadata) {
+    return metadata != null && metadata.getClass() == type && predicate.test(metadata);
+  }
+
+  @Override
+  public String toString() {
+    return "TypedPredicate(type=" + type.getCanonicalName() + ", predicate=" + predicate + ")";
+  }
+
+  /**
+   * Build a predicate that matches all metadata of the given type.
+   *
+   * @param type concrete type of metadata to match
+   * @param <M> type of metadata
+   * @param <T> concrete type of metadata to match
+   * @return a new typed predicate
+   * @throws java.lang.IllegalArgumentException if the given type is not a concrete class
+   */
+  public static <M, T extends M> TypedPredicate<M> of(final Class<T> type) {
+    return of(type, metadata -> true);
+  }
+
+  /**
+   * Build a predicate that matches metadata of the given type, which also matches the given
+   * predicate.
+   *
+   * @param type concrete type of metadata to match
+   * @param predicate predicate to match metadata of the given type against
+   * @param <M> type of metadata
+   * @param <T> concrete type of metadata to match
+   * @return a new typed predicate
+   * @throws java.lang.IllegalArgumentException if the given type is not a concrete class
+   */
+  public static <M, T extends M> TypedPredicate<M> of(
+      final Class<T> type, final Predicate<? super T> predicate
+  ) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      throw new IllegalArgumentException("Type must be a concrete class: " + type);
+    }
+
+    return new TypedPredicate<>(type, metadata -> predicate.test(type.cast(metadata)));
+  }
+}
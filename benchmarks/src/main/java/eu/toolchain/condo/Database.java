@@ -0,0 +1,8 @@
+package eu.toolchain.condo;
+
+@AutoCondo
+public interface Database {
+  void write(String id, String value);
+
+  String read(String id);
+}
@@ -0,0 +1,18 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class InMemoryDatabase implements Database {
+  private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+
+  @Override
+  public void write(final String id, final String value) {
+    values.put(id, value);
+  }
+
+  @Override
+  public String read(final String id) {
+    return values.get(id);
+  }
+}
@@ -0,0 +1,74 @@
+package eu.toolchain.condo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of scheduling actions which are not masked, with a varying number of
+ * registered masks, and with or without metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleBenchmark {
+  private static final CompletableFuture<Object> COMPLETED =
+      CompletableFuture.completedFuture(null);
+
+  @Param({"0", "1", "100"})
+  public int masks;
+
+  @Param({"HANDOFF", "SINGLE_HOP"})
+  public ExecutionMode executionMode;
+
+  @Param({"false", "true"})
+  public boolean metrics;
+
+  private final Object metadata = new Object();
+
+  private Condo<Object> condo;
+
+  @Setup
+  public void setup() {
+    final CoreCondo.Builder<Object> builder = CoreCondo
+        .builder()
+        .executor(Runnable::run)
+        .executionMode(executionMode)
+        .retention(Retention.none());
+
+    if (metrics) {
+      builder.listener(new CondoMetrics());
+    }
+
+    condo = builder.build();
+
+    for (int i = 0; i < masks; i++) {
+      final Object marker = new Object();
+      condo.mask(m -> m == marker);
+    }
+  }
+
+  @Benchmark
+  public CompletableFuture<Object> schedule() {
+    return condo.schedule(metadata, () -> metadata);
+  }
+
+  @Benchmark
+  public CompletableFuture<Object> scheduleAsync() {
+    return condo.scheduleAsync(metadata, () -> COMPLETED);
+  }
+}
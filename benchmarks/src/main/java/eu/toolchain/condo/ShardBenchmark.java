@@ -0,0 +1,63 @@
+package eu.toolchain.condo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of scheduling and completing actions from several threads, with a varying number of
+ * shards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ShardBenchmark {
+  @Param({"1", "16"})
+  public int shards;
+
+  private Condo<Integer> condo;
+
+  @Setup
+  public void setup() {
+    condo = CoreCondo
+        .<Integer>builder()
+        .executor(Runnable::run)
+        .executionMode(ExecutionMode.SINGLE_HOP)
+        .retention(Retention.maxEntries(1024))
+        .shards(shards)
+        .shardKey(key -> key)
+        .build();
+  }
+
+  @Benchmark
+  public CompletableFuture<Integer> schedule(final ThreadKey key) {
+    return condo.schedule(key.key, () -> key.key);
+  }
+
+  /**
+   * A distinct metadata key for every benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class ThreadKey {
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    final Integer key = NEXT.getAndIncrement();
+  }
+}
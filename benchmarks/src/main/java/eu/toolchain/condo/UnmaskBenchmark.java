@@ -0,0 +1,56 @@
+package eu.toolchain.condo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Latency of removing a mask which releases a single action, while a large number of other actions
+ * are held by a different mask.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnmaskBenchmark {
+  @Param({"1000", "10000"})
+  public int deferred;
+
+  private final Object target = new Object();
+
+  private Condo<Object> condo;
+  private Predicate<Object> mask;
+
+  @Setup(Level.Invocation)
+  public void setup() {
+    condo = CoreCondo.builder().executor(Runnable::run).retention(Retention.none()).build();
+    mask = m -> m == target;
+
+    condo.mask(m -> m != target).mask(mask);
+
+    for (int i = 0; i < deferred - 1; i++) {
+      condo.schedule(new Object(), () -> null);
+    }
+
+    condo.schedule(target, () -> null);
+  }
+
+  @Benchmark
+  public Condo<Object> unmask() {
+    return condo.unmask(mask);
+  }
+}
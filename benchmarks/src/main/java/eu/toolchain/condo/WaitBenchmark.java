@@ -0,0 +1,64 @@
+package eu.toolchain.condo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Cost of satisfying a wait, while a varying number of other waits are idle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaitBenchmark {
+  @Param({"0", "100", "10000"})
+  public int waiters;
+
+  /**
+   * If idle waits are typed on a different type of metadata than the one being processed.
+   */
+  @Param({"false", "true"})
+  public boolean typed;
+
+  private final Object metadata = new Object();
+  private final Predicate<Object> predicate = m -> m == metadata;
+
+  private Condo<Object> condo;
+
+  @Setup
+  public void setup() {
+    condo = CoreCondo.builder().executor(Runnable::run).retention(Retention.none()).build();
+
+    for (int i = 0; i < waiters; i++) {
+      final Integer marker = i;
+
+      if (typed) {
+        condo.waitOnceAsync(TypedPredicate.of(Integer.class, m -> m.equals(marker)));
+      } else {
+        condo.waitOnceAsync(m -> m == marker);
+      }
+    }
+  }
+
+  @Benchmark
+  public CompletableFuture<Void> waitOnce() {
+    final CompletableFuture<Void> wait = condo.waitOnceAsync(predicate);
+    condo.schedule(metadata, () -> null);
+    return wait;
+  }
+}
@@ -0,0 +1,58 @@
+package eu.toolchain.condo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of a generated wrapper compared to calling the wrapped implementation directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapperBenchmark {
+  private Database direct;
+  private Database condo;
+  private Database disabled;
+
+  @Setup
+  public void setup() {
+    direct = new InMemoryDatabase();
+
+    condo = new Database_Condo(CoreCondo
+        .<DatabaseMetadata>builder()
+        .executor(Runnable::run)
+        .executionMode(ExecutionMode.SINGLE_HOP)
+        .retention(Retention.none())
+        .build(), direct);
+
+    disabled = new Database_Condo(Condo.disabled(), direct);
+  }
+
+  @Benchmark
+  public void direct() {
+    direct.write("id", "value");
+  }
+
+  @Benchmark
+  public void condo() {
+    condo.write("id", "value");
+  }
+
+  @Benchmark
+  public void disabled() {
+    disabled.write("id", "value");
+  }
+}
@@ -0,0 +1,84 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A listener which notifies other listeners in order.
+ *
+ * @param <M> type of metadata
+ * @see CondoListener#composite(List)
+ */
+final class CompositeListener<M> implements CondoListener<M> {
+  private final List<CondoListener<? super M>> listeners;
+
+  CompositeListener(final List<? extends CondoListener<? super M>> listeners) {
+    this.listeners = new ArrayList<>(listeners);
+  }
+
+  @Override
+  public void onScheduled(final M metadata) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onScheduled(metadata);
+    }
+  }
+
+  @Override
+  public void onDeferred(final M metadata) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onDeferred(metadata);
+    }
+  }
+
+  @Override
+  public void onRejected(final M metadata) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onRejected(metadata);
+    }
+  }
+
+  @Override
+  public void onDropped(final M metadata) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onDropped(metadata);
+    }
+  }
+
+  @Override
+  public void onReleased(final M metadata, final long deferredNanos) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onReleased(metadata, deferredNanos);
+    }
+  }
+
+  @Override
+  public void onStarted(final M metadata) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onStarted(metadata);
+    }
+  }
+
+  @Override
+  public void onCompleted(
+      final M metadata, final long executionNanos, final long totalNanos, final Throwable error
+  ) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onCompleted(metadata, executionNanos, totalNanos, error);
+    }
+  }
+
+  @Override
+  public void onMasked(final Predicate<?> mask) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onMasked(mask);
+    }
+  }
+
+  @Override
+  public void onUnmasked(final Predicate<?> mask, final int released, final long evaluationNanos) {
+    for (final CondoListener<? super M> listener : listeners) {
+      listener.onUnmasked(mask, released, evaluationNanos);
+    }
+  }
+}
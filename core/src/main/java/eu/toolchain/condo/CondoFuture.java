@@ -0,0 +1,56 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A future returned when scheduling an action, which passes cancellation on to the action.
+ *
+ * <p>While the action is deferred, cancelling the future removes it from the deferred queue. While
+ * the action is running, cancelling the future cancels the stage that the action returned, if
+ * there is one. Actions which are cancelled before they start are never run.
+ *
+ * @param <T> type of the result
+ */
+final class CondoFuture<T> extends CompletableFuture<T> {
+  /**
+   * What to do when cancelled, depends on what state the action is in.
+   */
+  private volatile Canceller canceller = null;
+
+  /**
+   * Set what to do if the future is cancelled, replacing anything previously set.
+   *
+   * <p>If the future has already been cancelled, the given canceller is invoked immediately. It
+   * might therefore be invoked twice if the future is cancelled concurrently, and must tolerate
+   * that.
+   *
+   * @param canceller what to do when cancelled, or {@code null} to do nothing
+   */
+  void onCancel(final Canceller canceller) {
+    this.canceller = canceller;
+
+    if (canceller != null && isCancelled()) {
+      canceller.cancel(false);
+    }
+  }
+
+  @Override
+  public boolean cancel(final boolean mayInterruptIfRunning) {
+    final boolean cancelled = super.cancel(mayInterruptIfRunning);
+    final Canceller canceller = this.canceller;
+
+    if (cancelled && canceller != null) {
+      canceller.cancel(mayInterruptIfRunning);
+    }
+
+    return cancelled;
+  }
+
+  /**
+   * Passes cancellation on to the action.
+   */
+  @FunctionalInterface
+  interface Canceller {
+    void cancel(boolean mayInterruptIfRunning);
+  }
+}
@@ -0,0 +1,126 @@
+package eu.toolchain.condo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Listener for what a {@link CoreCondo} is doing internally.
+ *
+ * <p>All methods do nothing by default. Listeners are invoked synchronously, some of them while
+ * internal locks are held, so they must be fast and must not throw.
+ *
+ * <p>When no listener is configured, no hooks are invoked and no timestamps are taken.
+ *
+ * @param <M> type of metadata
+ * @see CoreCondo.Builder#listener(CondoListener)
+ * @see CondoMetrics
+ */
+public interface CondoListener<M> {
+  /**
+   * An action has been scheduled.
+   *
+   * @param metadata metadata of the action
+   */
+  default void onScheduled(final M metadata) {
+  }
+
+  /**
+   * An action has been deferred because it is masked.
+   *
+   * @param metadata metadata of the action
+   */
+  default void onDeferred(final M metadata) {
+  }
+
+  /**
+   * An action has been rejected without being deferred, either because the deferred queue was full
+   * or because the condo has been closed.
+   *
+   * @param metadata metadata of the action
+   */
+  default void onRejected(final M metadata) {
+  }
+
+  /**
+   * A deferred action has been dropped without being run, either to make room in the deferred
+   * queue, because its future was cancelled, because it expired and the expiry policy fails expired
+   * actions, or because the condo it was deferred in has been closed.
+   *
+   * @param metadata metadata of the action
+   */
+  default void onDropped(final M metadata) {
+  }
+
+  /**
+   * A deferred action has been released, either because it was pumped or because it is no longer
+   * masked.
+   *
+   * @param metadata metadata of the action
+   * @param deferredNanos how long the action was deferred, in nanoseconds
+   */
+  default void onReleased(final M metadata, final long deferredNanos) {
+  }
+
+  /**
+   * An action has started.
+   *
+   * @param metadata metadata of the action
+   */
+  default void onStarted(final M metadata) {
+  }
+
+  /**
+   * An action has completed.
+   *
+   * @param metadata metadata of the action
+   * @param executionNanos how long the action took since it started, in nanoseconds
+   * @param totalNanos how long the action took since it was scheduled, in nanoseconds
+   * @param error the error that the action failed with, or {@code null} if it was successful
+   */
+  default void onCompleted(
+      final M metadata, final long executionNanos, final long totalNanos, final Throwable error
+  ) {
+  }
+
+  /**
+   * A mask has been added.
+   *
+   * @param mask the mask that was added
+   */
+  default void onMasked(final Predicate<?> mask) {
+  }
+
+  /**
+   * A mask has been removed, and the deferred actions it might have masked have been evaluated.
+   *
+   * @param mask the mask that was removed
+   * @param released number of actions released by removing the mask
+   * @param evaluationNanos how long it took to evaluate deferred actions, in nanoseconds
+   */
+  default void onUnmasked(final Predicate<?> mask, final int released, final long evaluationNanos) {
+  }
+
+  /**
+   * Combine listeners into one, which notifies each of them in the given order.
+   *
+   * @param listeners listeners to combine
+   * @param <M> type of metadata
+   * @return a listener notifying all the given listeners
+   */
+  @SafeVarargs
+  static <M> CondoListener<M> composite(final CondoListener<? super M>... listeners) {
+    return composite(Arrays.asList(listeners));
+  }
+
+  /**
+   * Combine listeners into one, which notifies each of them in the given order.
+   *
+   * @param listeners listeners to combine
+   * @param <M> type of metadata
+   * @return a listener notifying all the given listeners
+   */
+  static <M> CondoListener<M> composite(final List<? extends CondoListener<? super M>> listeners) {
+    return new CompositeListener<>(listeners);
+  }
+}
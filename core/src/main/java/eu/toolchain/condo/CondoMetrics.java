@@ -0,0 +1,182 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A listener which maintains counters and gauges of what a {@link CoreCondo} is doing.
+ *
+ * <p>Counters are backed by {@link LongAdder}s, so updating them is cheap under contention while
+ * reading them is comparatively expensive. Gauges are derived from counters, and might be briefly
+ * inconsistent while events are being recorded.
+ */
+public class CondoMetrics implements CondoListener<Object> {
+  private final LongAdder scheduled = new LongAdder();
+  private final LongAdder deferred = new LongAdder();
+  private final LongAdder released = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder deferredNanos = new LongAdder();
+  private final LongAdder started = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder executionNanos = new LongAdder();
+  private final LongAdder masked = new LongAdder();
+  private final LongAdder unmasked = new LongAdder();
+  private final LongAdder evaluationNanos = new LongAdder();
+
+  @Override
+  public void onScheduled(final Object metadata) {
+    scheduled.increment();
+  }
+
+  @Override
+  public void onDeferred(final Object metadata) {
+    deferred.increment();
+  }
+
+  @Override
+  public void onRejected(final Object metadata) {
+    rejected.increment();
+  }
+
+  @Override
+  public void onDropped(final Object metadata) {
+    dropped.increment();
+  }
+
+  @Override
+  public void onReleased(final Object metadata, final long deferredNanos) {
+    released.increment();
+    this.deferredNanos.add(deferredNanos);
+  }
+
+  @Override
+  public void onStarted(final Object metadata) {
+    started.increment();
+  }
+
+  @Override
+  public void onCompleted(
+      final Object metadata, final long executionNanos, final long totalNanos,
+      final Throwable error
+  ) {
+    completed.increment();
+    this.executionNanos.add(executionNanos);
+
+    if (error != null) {
+      failed.increment();
+    }
+  }
+
+  @Override
+  public void onMasked(final Predicate<?> mask) {
+    masked.increment();
+  }
+
+  @Override
+  public void onUnmasked(final Predicate<?> mask, final int released, final long evaluationNanos) {
+    unmasked.increment();
+    this.evaluationNanos.add(evaluationNanos);
+  }
+
+  /**
+   * Number of actions that have been scheduled.
+   */
+  public long scheduled() {
+    return scheduled.sum();
+  }
+
+  /**
+   * Number of actions that have been deferred.
+   */
+  public long deferred() {
+    return deferred.sum();
+  }
+
+  /**
+   * Number of deferred actions that have been released.
+   */
+  public long released() {
+    return released.sum();
+  }
+
+  /**
+   * Number of actions that have been rejected, either because the deferred queue was full or
+   * because the condo had been closed.
+   */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Number of deferred actions that have been dropped without being run.
+   *
+   * <p>Actions are dropped to make room in the deferred queue, when their future is cancelled,
+   * when they expire and the expiry policy fails them, or when the condo they were deferred in is
+   * closed.
+   */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Total time that released actions have been deferred, in nanoseconds.
+   */
+  public long deferredNanos() {
+    return deferredNanos.sum();
+  }
+
+  /**
+   * Number of actions that have completed, successfully or not.
+   */
+  public long completed() {
+    return completed.sum();
+  }
+
+  /**
+   * Number of actions that have failed.
+   */
+  public long failed() {
+    return failed.sum();
+  }
+
+  /**
+   * Total time spent executing completed actions, in nanoseconds.
+   */
+  public long executionNanos() {
+    return executionNanos.sum();
+  }
+
+  /**
+   * Total time spent evaluating deferred actions when removing masks, in nanoseconds.
+   */
+  public long evaluationNanos() {
+    return evaluationNanos.sum();
+  }
+
+  /**
+   * Number of actions that are currently deferred.
+   */
+  public long queueDepth() {
+    /* read the counters of removals first, so that the gauge is never negative */
+    final long removed = this.released.sum() + this.dropped.sum();
+    return this.deferred.sum() - removed;
+  }
+
+  /**
+   * Number of actions that have started, but not completed.
+   */
+  public long inFlight() {
+    final long completed = this.completed.sum();
+    return this.started.sum() - completed;
+  }
+
+  /**
+   * Number of masks that are currently active.
+   */
+  public long activeMasks() {
+    final long unmasked = this.unmasked.sum();
+    return this.masked.sum() - unmasked;
+  }
+}
@@ -3,16 +3,31 @@ package eu.toolchain.condo;
 import lombok.RequiredArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -20,230 +35,1456 @@ import java.util.function.Supplier;
  * Core implementation of Condo.
  */
 @RequiredArgsConstructor
-public class CoreCondo<M> implements Condo<M> {
+public class CoreCondo<M> implements ScopedCondo<M> {
+  private static final String CLOSED = "Condo has been closed";
+
   private final Executor executor;
+  private final ExecutionMode executionMode;
+  private final ScheduledExecutorService scheduler;
+  private final Ticker ticker;
+  /**
+   * Retention of history in each shard, also used by scopes.
+   */
+  private final Retention retention;
+  /**
+   * Shards that actions are striped over, there is always at least one.
+   */
+  private final Shard<M>[] shards;
+  /**
+   * Function deriving the shard key of metadata, or {@code null} to use the type of metadata.
+   */
+  private final Function<? super M, ?> shardKey;
+  /**
+   * Listener notified of internal events, or {@code null} if none is configured.
+   */
+  private final CondoListener<? super M> listener;
+  /**
+   * Maximum number of deferred actions in each shard, {@link Integer#MAX_VALUE} if unbounded.
+   */
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final ReleaseOrder<M> releaseOrder;
+
+  /**
+   * Lock guarding updates to {@link #masks}, shared by all shards.
+   */
+  private final Lock maskLock = new ReentrantLock();
+
+  /**
+   * Snapshot of the current masks, only replaced under {@link #maskLock}.
+   */
+  private volatile MaskSet<M> masks = MaskSet.empty();
+
+  /**
+   * Pacer that actions released by removing a mask are handed to, or {@code null} if releases are
+   * not paced. Only assigned by the builder, before the instance is published.
+   */
+  private Pacer<M> pacer = null;
+
+  /**
+   * Expiry of actions which have been deferred for too long, or {@code null} if deferred actions
+   * never expire. Only assigned by the builder, before the instance is published.
+   */
+  private Expiry<M> expiry = null;
+
+  /**
+   * The condo that this is a scope of, or {@code null} if this is not a scope. Only assigned when
+   * the scope is created, before it is published.
+   */
+  private CoreCondo<M> parent = null;
+
+  /**
+   * Open scopes of this condo, lazily created and guarded by {@link #maskLock}.
+   */
+  private Set<CoreCondo<M>> scopes = null;
+
+  /**
+   * Masks added to this scope itself rather than inherited from its parent, guarded by
+   * {@link #maskLock}. Only used by scopes, since every mask of a condo that is not a scope is its
+   * own.
+   */
+  private final List<Predicate<M>> ownMasks = new ArrayList<>();
+
+  /**
+   * If this condo has been closed, only modified under {@link #maskLock}.
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * The number of actions that are currently deferred.
+   *
+   * @return the number of deferred actions
+   */
+  public int deferredSize() {
+    int size = 0;
+
+    for (final Shard<M> shard : shards) {
+      shard.maskLock.lock();
+
+      try {
+        size += shard.deferred.size();
+      } finally {
+        shard.maskLock.unlock();
+      }
+    }
+
+    return size;
+  }
+
+  @Override
+  public boolean isActive() {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Cancelling the returned future before the action has started removes it from the deferred
+   * queue if it is deferred, and the action is never run.
+   */
+  @Override
+  public <T> CompletableFuture<T> schedule(
+      final M metadata, final Supplier<T> action
+  ) {
+    if (executionMode == ExecutionMode.SINGLE_HOP) {
+      final CondoFuture<T> future = new CondoFuture<>();
+      return submit(metadata, bindSyncAction(metadata, action, future), true, future);
+    }
+
+    return scheduleAsync(metadata, () -> CompletableFuture.supplyAsync(action, executor));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Cancelling the returned future before the action has started removes it from the deferred
+   * queue if it is deferred, and the action is never run. Cancelling it while the action is running
+   * cancels the stage returned by the action, if that stage is also a {@link Future}.
+   */
+  @Override
+  public <T> CompletableFuture<T> scheduleAsync(
+      final M metadata, final Supplier<? extends CompletionStage<T>> action
+  ) {
+    final CondoFuture<T> future = new CondoFuture<>();
+    return submit(metadata, bindAction(metadata, action, future), false, future);
+  }
+
+  @Override
+  public <T> T invoke(final M metadata, final Supplier<T> action) {
+    if (closed) {
+      throw new RejectedExecutionException(CLOSED);
+    }
+
+    final long scheduled = listener == null ? 0L : ticker.nanoTime();
+
+    if (masks.matches(metadata)) {
+      awaitRelease(metadata);
+    } else {
+      if (listener != null) {
+        listener.onScheduled(metadata);
+      }
+
+      if (pacer != null) {
+        pacer.started();
+      }
+    }
+
+    final long started = onStarted(metadata);
+    final T result;
+
+    try {
+      result = action.get();
+    } catch (final RuntimeException | Error e) {
+      markProcessed(metadata, scheduled, started, e);
+      throw e;
+    }
+
+    markProcessed(metadata, scheduled, started, null);
+    return result;
+  }
+
+  /**
+   * Block until an action with the given metadata is no longer masked.
+   *
+   * <p>The action is deferred like any other action, but releasing it only wakes up the calling
+   * thread.
+   *
+   * @param metadata metadata of the action
+   */
+  private void awaitRelease(final M metadata) {
+    final CondoFuture<Void> released = new CondoFuture<>();
+
+    submit(metadata, () -> {
+      if (!released.complete(null)) {
+        onSkipped();
+      }
+    }, false, released);
+
+    try {
+      released.get();
+    } catch (final InterruptedException e) {
+      released.cancel(false);
+      Thread.currentThread().interrupt();
+      throw (CancellationException) new CancellationException(
+          "Interrupted while waiting for " + metadata + " to be released").initCause(e);
+    } catch (final ExecutionException e) {
+      throw Futures.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Run the given bound action, or defer it if it is masked.
+   *
+   * @param metadata metadata associated with the action
+   * @param runnable runnable of the bound action
+   * @param handoff if the runnable has to be handed off to the executor
+   * @param future future bound to the action
+   * @param <T> return type of the action
+   * @return the given future
+   */
+  private <T> CompletableFuture<T> submit(
+      final M metadata, final Runnable runnable, final boolean handoff,
+      final CondoFuture<T> future
+  ) {
+    if (listener != null) {
+      listener.onScheduled(metadata);
+    }
+
+    if (closed) {
+      reject(metadata, future, CLOSED);
+      return future;
+    }
+
+    if (masks.matches(metadata)) {
+      final Shard<M> shard = shardFor(metadata);
+      List<Waiter<M>> satisfied = null;
+      boolean deferred = false;
+      /* futures run their callbacks when completed, so they are only failed after unlocking */
+      String rejected = null;
+      List<DeferredAction<M>> dropped = null;
+
+      shard.maskLock.lock();
+
+      try {
+        /* masks might have been updated since the snapshot was read */
+        Predicate<M> blocker = masks.firstMatch(metadata);
+
+        while (blocker != null && !shard.pumps.offer(metadata)) {
+          if (shard.deferred.size() < capacity) {
+            /* deferred actions are dropped when closing, so nothing may be deferred after that */
+            if (closed) {
+              rejected = CLOSED;
+            } else {
+              deferAction(shard, metadata, runnable, handoff, future, blocker);
+              deferred = true;
+            }
+
+            break;
+          }
+
+          if (overflowPolicy == OverflowPolicy.BYPASS) {
+            break;
+          }
+
+          if (dropped == null) {
+            dropped = new ArrayList<>(1);
+          }
+
+          rejected = overflow(shard, dropped);
+
+          if (rejected != null) {
+            break;
+          }
+
+          blocker = masks.firstMatch(metadata);
+        }
+
+        if (!deferred && rejected == null) {
+          satisfied = shard.pumps.drainSatisfied();
+        }
+      } finally {
+        shard.maskLock.unlock();
+      }
+
+      if (dropped != null) {
+        for (final DeferredAction<M> d : dropped) {
+          d.future.completeExceptionally(
+              new RejectedExecutionException("Dropped to make room in the deferred queue"));
+        }
+      }
+
+      if (rejected != null) {
+        reject(metadata, future, rejected);
+        return future;
+      }
+
+      if (deferred) {
+        return future;
+      }
+
+      run(runnable, handoff);
+      satisfied.forEach(Waiter::signal);
+      return future;
+    }
+
+    run(runnable, handoff);
+    return future;
+  }
+
+  /**
+   * Run the given bound action.
+   *
+   * @param runnable runnable of the bound action
+   * @param handoff if the runnable has to be handed off to the executor
+   */
+  private void run(final Runnable runnable, final boolean handoff) {
+    if (pacer != null) {
+      pacer.started();
+    }
+
+    if (handoff) {
+      executor.execute(runnable);
+    } else {
+      runnable.run();
+    }
+  }
+
+  private void run(final DeferredAction<M> d) {
+    run(d.runnable, d.handoff);
+  }
+
+  /**
+   * Defer the given action.
+   *
+   * <p>Must be invoked under the mask lock of the shard.
+   *
+   * @param shard shard to defer the action in
+   * @param metadata metadata associated with the action
+   * @param runnable runnable of the bound action
+   * @param handoff if the runnable has to be handed off to the executor
+   * @param future future bound to the action
+   * @param blocker mask blocking the action
+   */
+  private void deferAction(
+      final Shard<M> shard, final M metadata, final Runnable runnable, final boolean handoff,
+      final CondoFuture<?> future, final Predicate<M> blocker
+  ) {
+    final long now = listener == null && expiry == null ? 0L : ticker.nanoTime();
+    final DeferredAction<M> action = new DeferredAction<>(metadata, runnable, handoff, future, now);
+    shard.deferred.add(action, blocker);
+
+    if (listener != null) {
+      listener.onDeferred(metadata);
+    }
+
+    if (expiry != null) {
+      expiry.add(action, now);
+    }
+
+    future.onCancel(mayInterruptIfRunning -> cancelDeferred(shard, action));
+  }
+
+  /**
+   * Remove a deferred action because its future has been cancelled, unless it has already been
+   * released or dropped.
+   *
+   * @param shard shard that the action was deferred in
+   * @param action action to remove
+   */
+  private void cancelDeferred(final Shard<M> shard, final DeferredAction<M> action) {
+    shard.maskLock.lock();
+
+    try {
+      if (!shard.deferred.contains(action)) {
+        return;
+      }
+
+      shard.deferred.remove(action);
+      signalNotFull(shard);
+
+      if (listener != null) {
+        listener.onDropped(action.metadata);
+      }
+    } finally {
+      shard.maskLock.unlock();
+    }
+  }
+
+  /**
+   * Expire actions which have been deferred for longer than their time to live, unless they have
+   * already been released or dropped.
+   *
+   * <p>This is invoked on the scheduler, so no action is run on the calling thread.
+   *
+   * @param actions actions to expire
+   */
+  private void expire(final List<DeferredAction<M>> actions) {
+    final List<DeferredAction<M>> expired = new ArrayList<>();
+
+    for (final DeferredAction<M> action : actions) {
+      final Shard<M> shard = shardFor(action.metadata);
+
+      shard.maskLock.lock();
+
+      try {
+        if (!shard.deferred.contains(action)) {
+          continue;
+        }
+
+        shard.deferred.remove(action);
+        signalNotFull(shard);
+      } finally {
+        shard.maskLock.unlock();
+      }
+
+      expired.add(action);
+    }
+
+    if (expiry.policy() == ExpiryPolicy.RELEASE) {
+      expired.forEach(this::onReleased);
+
+      if (!expired.isEmpty()) {
+        dispatch(expired);
+      }
+
+      return;
+    }
+
+    for (final DeferredAction<M> action : expired) {
+      if (listener != null) {
+        listener.onDropped(action.metadata);
+      }
+
+      action.future.completeExceptionally(new TimeoutException(
+          "Deferred for longer than " + expiry.ttlNanos() + "ns: " + action.metadata));
+    }
+  }
+
+  /**
+   * Handle a masked action while the deferred queue of its shard is full, according to the
+   * configured {@link OverflowPolicy}.
+   *
+   * <p>Must be invoked under the mask lock of the shard.
+   *
+   * @param shard shard that is full
+   * @param dropped list to add actions dropped to make room to, their futures must be failed once
+   * the mask lock has been released
+   * @return {@code null} if deferring the action should be retried, otherwise the reason that the
+   * action has to be rejected
+   */
+  private String overflow(final Shard<M> shard, final List<DeferredAction<M>> dropped) {
+    switch (overflowPolicy) {
+      case BLOCK:
+        try {
+          shard.notFull.await();
+          return null;
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return "Interrupted while waiting for room in the deferred queue";
+        }
+      case DROP_OLDEST:
+        final Iterator<DeferredAction<M>> it = shard.deferred.iterator();
+        final DeferredAction<M> oldest = it.next();
+        it.remove();
+
+        if (listener != null) {
+          listener.onDropped(oldest.metadata);
+        }
+
+        dropped.add(oldest);
+        return null;
+      default:
+        return "Deferred queue is full";
+    }
+  }
+
+  private void reject(final M metadata, final CompletableFuture<?> future, final String message) {
+    if (listener != null) {
+      listener.onRejected(metadata);
+    }
+
+    future.completeExceptionally(new RejectedExecutionException(message));
+  }
+
+  /**
+   * Wake up threads blocked on the deferred queue of the given shard being full.
+   *
+   * <p>Must be invoked under the mask lock of the shard, after actions have been removed from the
+   * queue, a mask has been removed or a pump has been registered.
+   *
+   * @param shard shard to signal
+   */
+  private void signalNotFull(final Shard<M> shard) {
+    if (capacity != Integer.MAX_VALUE && overflowPolicy == OverflowPolicy.BLOCK) {
+      shard.notFull.signalAll();
+    }
+  }
+
+  /**
+   * Notify the listener that the given deferred action has been released.
+   *
+   * @param d the deferred action that was released
+   */
+  private void onReleased(final DeferredAction<M> d) {
+    if (listener != null) {
+      listener.onReleased(d.metadata, ticker.nanoTime() - d.deferredAt);
+    }
+  }
+
+  @Override
+  public Condo<M> mask(final Predicate<M> predicate) {
+    addMask(predicate, parent != null);
+
+    if (listener != null) {
+      listener.onMasked(predicate);
+    }
+
+    return this;
+  }
+
+  /**
+   * Add a mask to this condo and every scope of it.
+   *
+   * @param predicate mask to add
+   * @param own if the mask is added to this scope itself, rather than inherited from its parent
+   */
+  private void addMask(final Predicate<M> predicate, final boolean own) {
+    maskLock.lock();
+
+    try {
+      masks = masks.add(predicate);
+
+      if (own) {
+        ownMasks.add(predicate);
+      }
+
+      if (scopes != null) {
+        scopes.forEach(scope -> scope.addMask(predicate, false));
+      }
+    } finally {
+      maskLock.unlock();
+    }
+  }
+
+  @Override
+  public Condo<M> unmask(final Predicate<M> predicate) {
+    final List<Runnable> dispatches = new ArrayList<>();
+    final long start = listener == null ? 0L : ticker.nanoTime();
+    final int released;
+    final boolean report;
+
+    maskLock.lock();
+
+    try {
+      released = removeMask(predicate, dispatches);
+
+      if (released < 0) {
+        throw new IllegalStateException("Mask not registered: " + predicate);
+      }
+
+      /* inherited masks are reported when they are removed from the parent */
+      report = parent == null || removeOwnMask(predicate);
+    } finally {
+      maskLock.unlock();
+    }
+
+    if (listener != null && report) {
+      listener.onUnmasked(predicate, released, ticker.nanoTime() - start);
+    }
+
+    /* released actions only run once every lock has been released */
+    dispatches.forEach(Runnable::run);
+    return this;
+  }
+
+  /**
+   * Remove a mask from the masks added to this scope itself.
+   *
+   * <p>Must be invoked under {@link #maskLock}.
+   *
+   * @param predicate mask to remove, compared using reference equality
+   * @return {@code true} if the mask was added to this scope itself
+   */
+  private boolean removeOwnMask(final Predicate<M> predicate) {
+    final Iterator<Predicate<M>> it = ownMasks.iterator();
+
+    while (it.hasNext()) {
+      if (it.next() == predicate) {
+        it.remove();
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Remove a mask from this condo and every scope of it, releasing the actions it was masking.
+   *
+   * @param predicate mask to remove
+   * @param dispatches list to add tasks dispatching the released actions to, which must be run
+   * once the mask locks have been released
+   * @return the number of released actions in this condo and its scopes, or {@code -1} if the
+   * mask was not registered in this condo
+   */
+  private int removeMask(final Predicate<M> predicate, final List<Runnable> dispatches) {
+    maskLock.lock();
+
+    try {
+      final Optional<MaskSet<M>> next = masks.remove(predicate);
+
+      if (!next.isPresent()) {
+        return -1;
+      }
+
+      masks = next.get();
+
+      final List<DeferredAction<M>> unpaced = pacer == null ? new ArrayList<>() : null;
+      int released = 0;
+
+      for (final Shard<M> shard : shards) {
+        shard.maskLock.lock();
+
+        try {
+          released += evaluateDeferredAfterMaskUpdate(shard, predicate, unpaced);
+          /* blocked actions might no longer be masked, even if nothing was released */
+          signalNotFull(shard);
+        } finally {
+          shard.maskLock.unlock();
+        }
+      }
+
+      if (unpaced != null && !unpaced.isEmpty()) {
+        dispatches.add(() -> dispatch(unpaced));
+      }
+
+      if (pacer != null && released > 0) {
+        dispatches.add(pacer::drain);
+      }
+
+      /* scopes might already have removed an inherited mask themselves */
+      if (scopes != null) {
+        for (final CoreCondo<M> scope : scopes) {
+          released += Math.max(0, scope.removeMask(predicate, dispatches));
+        }
+      }
+
+      return released;
+    } finally {
+      maskLock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Scopes do not pace the release of deferred actions, and actions deferred in them do not
+   * expire.
+   *
+   * <p>Listeners are only told about masks removed from the condo they were added to, and masks
+   * that are still in place when a scope is closed are reported as removed without releasing
+   * anything.
+   */
+  @Override
+  public ScopedCondo<M> scope() {
+    @SuppressWarnings("unchecked")
+    final Shard<M>[] shards = new Shard[]{new Shard<>(retention, releaseOrder)};
+
+    final CoreCondo<M> scope = new CoreCondo<>(executor, executionMode, scheduler, ticker,
+        retention, shards, null, listener, capacity, overflowPolicy, releaseOrder);
+    scope.parent = this;
+
+    maskLock.lock();
+
+    try {
+      if (closed) {
+        throw new IllegalStateException(CLOSED);
+      }
+
+      scope.masks = masks;
+
+      if (scopes == null) {
+        scopes = new HashSet<>();
+      }
+
+      scopes.add(scope);
+    } finally {
+      maskLock.unlock();
+    }
+
+    return scope;
+  }
+
+  @Override
+  public void close() {
+    final Collection<CoreCondo<M>> closing;
+    final List<Predicate<M>> discarded;
+
+    maskLock.lock();
+
+    try {
+      if (closed) {
+        return;
+      }
+
+      closed = true;
+      closing = scopes == null ? Collections.emptyList() : scopes;
+      scopes = null;
+      discarded = new ArrayList<>(ownMasks);
+      ownMasks.clear();
+    } finally {
+      maskLock.unlock();
+    }
+
+    /* masks of a scope are discarded with it, without releasing anything */
+    if (listener != null) {
+      discarded.forEach(mask -> listener.onUnmasked(mask, 0, 0L));
+    }
+
+    if (parent != null) {
+      parent.removeScope(this);
+    }
+
+    closing.forEach(CoreCondo::close);
+
+    final List<DeferredAction<M>> dropped = new ArrayList<>();
+
+    for (final Shard<M> shard : shards) {
+      shard.maskLock.lock();
+
+      try {
+        dropped.addAll(shard.deferred.drain());
+        signalNotFull(shard);
+      } finally {
+        shard.maskLock.unlock();
+      }
+    }
+
+    for (final DeferredAction<M> d : dropped) {
+      if (listener != null) {
+        listener.onDropped(d.metadata);
+      }
+
+      d.future.cancel(false);
+    }
+  }
+
+  private void removeScope(final CoreCondo<M> scope) {
+    maskLock.lock();
+
+    try {
+      if (scopes != null) {
+        scopes.remove(scope);
+      }
+    } finally {
+      maskLock.unlock();
+    }
+  }
+
+  @Override
+  public Condo<M> pump(final Predicate<M> predicate) throws InterruptedException {
+    Futures.block(pumpAsync(predicate));
+    return this;
+  }
+
+  @Override
+  public Condo<M> pump(final Collection<? extends Predicate<M>> predicates)
+      throws InterruptedException {
+    Futures.block(pumpAsync(predicates));
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<Void> pumpAsync(final Collection<? extends Predicate<M>> predicates) {
+    final Waiter<M> waiter = new Waiter<>(true, predicates);
+    final List<Shard<M>> targets = shardsFor(waiter);
+
+    for (final Shard<M> shard : targets) {
+      final List<DeferredAction<M>> released = new ArrayList<>();
+      final boolean satisfied;
+
+      shard.maskLock.lock();
+
+      try {
+        final Iterator<DeferredAction<M>> it = shard.deferred.iterator(waiter.type());
+
+        while (it.hasNext() && !waiter.isSatisfied()) {
+          final DeferredAction<M> d = it.next();
+
+          if (waiter.offer(d.metadata)) {
+            it.remove();
+            onReleased(d);
+            released.add(d);
+          }
+        }
+
+        satisfied = waiter.isSatisfied();
+
+        if (!satisfied) {
+          shard.pumps.add(waiter);
+        }
+
+        signalNotFull(shard);
+      } finally {
+        shard.maskLock.unlock();
+      }
+
+      released.forEach(this::run);
+
+      if (satisfied) {
+        waiter.signal();
+        break;
+      }
+    }
+
+    return deregister(waiter, targets, shard -> shard.maskLock, shard -> shard.pumps);
+  }
+
+  @Override
+  public CompletableFuture<Void> pumpAsync(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
+  ) {
+    return timeout(pumpAsync(predicates), timeout, unit);
+  }
+
+  @Override
+  public int pump(final Predicate<M> predicate, final int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit must not be negative: " + limit);
+    }
+
+    return release(predicate, limit);
+  }
+
+  @Override
+  public int pumpAll(final Predicate<M> predicate) {
+    return release(predicate, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drain() {
+    return release(null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Release deferred actions matching the given predicate, in release order.
+   *
+   * <p>The mask lock of every visited shard is only taken once, and released actions are
+   * dispatched after it has been unlocked, see {@link #dispatch(List)}.
+   *
+   * @param predicate predicate to match, or {@code null} to match every action
+   * @param limit maximum number of actions to release
+   * @return the number of released actions
+   */
+  private int release(final Predicate<M> predicate, final int limit) {
+    final List<DeferredAction<M>> released = new ArrayList<>();
+    final Class<?> type =
+        predicate instanceof TypedPredicate ? ((TypedPredicate<M>) predicate).type() : null;
+    final Object key =
+        predicate instanceof KeyedPredicate ? ((KeyedPredicate<M>) predicate).key() : null;
+
+    for (final Shard<M> shard : shardsFor(key, type)) {
+      if (released.size() >= limit) {
+        break;
+      }
+
+      shard.maskLock.lock();
+
+      try {
+        final Iterator<DeferredAction<M>> it = shard.deferred.iterator(type);
+
+        while (released.size() < limit && it.hasNext()) {
+          final DeferredAction<M> d = it.next();
+
+          if (predicate != null && !predicate.test(d.metadata)) {
+            continue;
+          }
+
+          it.remove();
+          onReleased(d);
+          released.add(d);
+        }
+
+        signalNotFull(shard);
+      } finally {
+        shard.maskLock.unlock();
+      }
+    }
+
+    if (!released.isEmpty()) {
+      dispatch(released);
+    }
+
+    return released.size();
+  }
+
+  /**
+   * Run released actions, must not be invoked under any lock.
+   *
+   * <p>Actions which have to be handed off are handed to the executor as tasks of their own, so
+   * that they run in parallel. The remaining actions only start asynchronous work, and are run one
+   * after another as a single task.
+   *
+   * @param released released actions, in release order
+   */
+  private void dispatch(final List<DeferredAction<M>> released) {
+    if (pacer != null) {
+      released.forEach(d -> pacer.started());
+    }
+
+    final List<DeferredAction<M>> batch = new ArrayList<>();
+
+    for (final DeferredAction<M> d : released) {
+      if (d.handoff) {
+        execute(Collections.singletonList(d), d.runnable);
+      } else {
+        batch.add(d);
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      execute(batch, () -> runAll(batch));
+    }
+  }
+
+  /**
+   * Hand a task running the given actions to the executor, failing the actions if it is rejected.
+   *
+   * @param actions actions run by the task
+   * @param task task to hand to the executor
+   */
+  private void execute(final List<DeferredAction<M>> actions, final Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (final RejectedExecutionException e) {
+      for (final DeferredAction<M> d : actions) {
+        d.future.completeExceptionally(e);
+        onSkipped();
+      }
+    }
+  }
+
+  /**
+   * Run every given action, even if some of them throw.
+   *
+   * @param actions actions to run
+   */
+  private static void runAll(final List<? extends DeferredAction<?>> actions) {
+    Throwable failure = null;
+
+    for (final DeferredAction<?> d : actions) {
+      try {
+        d.runnable.run();
+      } catch (final RuntimeException | Error e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw Futures.propagate(failure);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws HistoryEvictedException if the retention fails on eviction, no retained entry matches,
+   * and entries have been evicted
+   */
+  @Override
+  public Condo<M> waitAny(final Predicate<M> predicate) throws InterruptedException {
+    Futures.block(waitAnyAsync(predicate));
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The future is completed exceptionally with a {@link HistoryEvictedException} if the
+   * retention fails on eviction, no retained entry matches, and entries have been evicted.
+   */
+  @Override
+  public CompletableFuture<Void> waitAnyAsync(final Predicate<M> predicate) {
+    return registerWaiter(new Waiter<>(false, Collections.singletonList(predicate)));
+  }
+
+  @Override
+  public CompletableFuture<Void> waitAnyAsync(
+      final Predicate<M> predicate, final long timeout, final TimeUnit unit
+  ) {
+    return timeout(waitAnyAsync(predicate), timeout, unit);
+  }
 
   /**
-   * Coordination lock for this instance.
+   * {@inheritDoc}
+   *
+   * @throws HistoryEvictedException if the retention fails on eviction, no retained entry matches,
+   * and entries that have not been matched by any other wait have been evicted
    */
-  private final Object processedLock = new Object();
-  private final Object maskLock = new Object();
+  @Override
+  public Condo<M> waitOnce(final Predicate<M> predicate) throws InterruptedException {
+    return waitOnce(Collections.singletonList(predicate));
+  }
 
-  private final List<Predicate<M>> masks = new ArrayList<>();
-  private final List<DeferredAction<M>> deferred = new ArrayList<>();
-  private final List<M> processed = new ArrayList<>();
-  private final List<M> onceProcessed = new ArrayList<>();
+  /**
+   * {@inheritDoc}
+   *
+   * @throws HistoryEvictedException if the retention fails on eviction, no retained entry matches,
+   * and entries that have not been matched by any other wait have been evicted
+   */
+  @Override
+  public Condo<M> waitOnce(final Collection<? extends Predicate<M>> predicates)
+      throws InterruptedException {
+    Futures.block(waitOnceAsync(predicates));
+    return this;
+  }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The future is completed exceptionally with a {@link HistoryEvictedException} if the
+   * retention fails on eviction, no retained entry matches, and entries that have not been matched
+   * by any other wait have been evicted.
+   *
+   * <p>If the returned future is cancelled or times out, entries that were already matched by some
+   * of the predicates are not made available to other waits.
+   */
   @Override
-  public <T> CompletableFuture<T> schedule(
-      final M metadata, final Supplier<T> action
+  public CompletableFuture<Void> waitOnceAsync(
+      final Collection<? extends Predicate<M>> predicates
   ) {
-    return scheduleAsync(metadata, () -> CompletableFuture.supplyAsync(action, executor));
+    return registerWaiter(new Waiter<>(true, predicates));
   }
 
   @Override
-  public <T> CompletableFuture<T> scheduleAsync(
-      final M metadata, final Supplier<? extends CompletionStage<T>> action
+  public CompletableFuture<Void> waitOnceAsync(
+      final Collection<? extends Predicate<M>> predicates, final long timeout, final TimeUnit unit
   ) {
-    final CompletableFuture<T> future = new CompletableFuture<>();
-    final DeferredAction<M> deferred = deferAction(metadata, action, future);
+    return timeout(waitOnceAsync(predicates), timeout, unit);
+  }
 
-    synchronized (maskLock) {
-      if (masks.stream().anyMatch(p -> p.test(metadata))) {
-        this.deferred.add(deferred);
-        maskLock.notifyAll();
-        return future;
+  /**
+   * Match the given waiter against retained history, and register it to be matched against future
+   * processed actions if it is not satisfied.
+   *
+   * @param waiter waiter to register
+   * @return the future of the waiter
+   */
+  private CompletableFuture<Void> registerWaiter(final Waiter<M> waiter) {
+    final List<Shard<M>> targets = shardsFor(waiter);
+    boolean evicted = false;
+
+    for (final Shard<M> shard : targets) {
+      shard.processedLock.lock();
+
+      try {
+        evicted |= matchHistory(shard.history, waiter);
+
+        if (waiter.isSatisfied()) {
+          break;
+        }
+
+        shard.waiters.add(waiter);
+      } finally {
+        shard.processedLock.unlock();
       }
     }
 
-    deferred.runnable.run();
-    return future;
-  }
-
-  @Override
-  public Condo<M> mask(final Predicate<M> predicate) {
-    synchronized (maskLock) {
-      masks.add(predicate);
-      maskLock.notifyAll();
+    if (waiter.isSatisfied()) {
+      waiter.signal();
+    } else if (evicted && retention.failOnEviction()) {
+      waiter
+          .future()
+          .completeExceptionally(
+              new HistoryEvictedException("History needed by " + waiter + " has been evicted"));
     }
 
-    return this;
+    return deregister(waiter, targets, shard -> shard.processedLock, shard -> shard.waiters);
   }
 
-  @Override
-  public Condo<M> unmask(final Predicate<M> predicate) {
-    synchronized (maskLock) {
-      final Iterator<Predicate<M>> iterator = masks.iterator();
-
-      while (iterator.hasNext()) {
-        if (iterator.next() == predicate) {
-          iterator.remove();
-          evaluateDeferredAfterMaskUpdate();
-          maskLock.notifyAll();
-          return this;
-        }
+  /**
+   * Match the given waiter against the retained history of a shard.
+   *
+   * <p>Must be invoked under the processed lock of the shard.
+   *
+   * @param history history to match against
+   * @param waiter waiter to match
+   * @return {@code true} if the waiter is not satisfied, and entries that it might have matched
+   * have been evicted
+   */
+  private boolean matchHistory(final History<M> history, final Waiter<M> waiter) {
+    history.evictExpired(ticker.nanoTime());
+
+    for (long seq = history.head(); seq < history.tail(); seq++) {
+      if (waiter.isOnce() && history.isConsumed(seq)) {
+        continue;
       }
-    }
 
-    throw new IllegalStateException("Mask not registered: " + predicate);
-  }
+      if (!waiter.offer(history.get(seq))) {
+        continue;
+      }
 
-  @Override
-  public Condo<M> pump(final Predicate<M> predicate) throws InterruptedException {
-    return pump(Collections.singleton(predicate));
-  }
+      if (waiter.isOnce()) {
+        history.consume(seq);
+      }
 
-  @Override
-  public Condo<M> pump(final Collection<? extends Predicate<M>> predicates)
-      throws InterruptedException {
-    final List<? extends Predicate<M>> currentPredicates = new LinkedList<>(predicates);
+      if (waiter.isSatisfied()) {
+        return false;
+      }
+    }
 
-    synchronized (maskLock) {
-      while (!currentPredicates.isEmpty()) {
-        final Iterator<DeferredAction<M>> iterator = this.deferred.iterator();
+    return waiter.isOnce() ? history.isUnconsumedEvicted(0) : history.isEvicted(0);
+  }
 
-        while (iterator.hasNext() && !currentPredicates.isEmpty()) {
-          final Iterator<? extends Predicate<M>> it = currentPredicates.iterator();
+  /**
+   * Remove the given waiter from the sets it is registered in once it is completed.
+   *
+   * <p>Satisfied waiters are removed by the set that satisfied them, so unless the waiter is
+   * registered in more than one shard this only happens when it is cancelled or timed out.
+   *
+   * @param waiter waiter to deregister
+   * @param targets shards that the waiter might be registered in
+   * @param lock lock guarding the waiter set of a shard
+   * @param waiters waiter set of a shard
+   * @return the future of the waiter
+   */
+  private CompletableFuture<Void> deregister(
+      final Waiter<M> waiter, final List<Shard<M>> targets, final Function<Shard<M>, Lock> lock,
+      final Function<Shard<M>, WaiterSet<M>> waiters
+  ) {
+    if (waiter.isDone() && targets.size() == 1) {
+      return waiter.future();
+    }
 
-          while (it.hasNext()) {
-            final Predicate<M> predicate = it.next();
-            final DeferredAction<M> d = iterator.next();
+    waiter.future().whenComplete((result, e) -> {
+      if (e == null && targets.size() == 1) {
+        return;
+      }
 
-            if (predicate.test(d.metadata)) {
-              iterator.remove();
-              it.remove();
-              d.runnable.run();
-            }
-          }
-        }
+      for (final Shard<M> shard : targets) {
+        final Lock shardLock = lock.apply(shard);
+        shardLock.lock();
 
-        if (currentPredicates.isEmpty()) {
-          break;
+        try {
+          waiters.apply(shard).remove(waiter);
+        } finally {
+          shardLock.unlock();
         }
-
-        maskLock.wait();
       }
+    });
 
-      return this;
-    }
+    return waiter.future();
   }
 
-  @Override
-  public Condo<M> waitAny(final Predicate<M> predicate) throws InterruptedException {
-    synchronized (processedLock) {
-      while (!processed.stream().anyMatch(predicate)) {
-        processedLock.wait();
-      }
+  /**
+   * Find the shard that actions with the given metadata are assigned to.
+   *
+   * @param metadata metadata to find the shard for
+   * @return the shard of the metadata
+   */
+  private Shard<M> shardFor(final M metadata) {
+    if (shards.length == 1) {
+      return shards[0];
     }
 
-    return this;
-  }
+    if (shardKey != null) {
+      return shardForKey(shardKey.apply(metadata));
+    }
 
-  @Override
-  public Condo<M> waitOnce(final Predicate<M> predicate) throws InterruptedException {
-    return waitOnce(Collections.singletonList(predicate));
+    return shardForKey(metadata == null ? null : metadata.getClass());
   }
 
-  public Condo<M> waitOnce(final Collection<? extends Predicate<M>> predicates)
-      throws InterruptedException {
-    final List<? extends Predicate<M>> currentPredicates = new LinkedList<>(predicates);
+  private Shard<M> shardForKey(final Object key) {
+    if (key == null) {
+      return shards[0];
+    }
 
-    synchronized (processedLock) {
-      while (!currentPredicates.isEmpty()) {
-        final Iterator<M> iterator = onceProcessed.iterator();
+    final int hash = key.hashCode();
+    return shards[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length];
+  }
 
-        while (iterator.hasNext() && !currentPredicates.isEmpty()) {
-          final Iterator<? extends Predicate<M>> it = currentPredicates.iterator();
+  /**
+   * Find the shards that the given waiter has to be registered in.
+   *
+   * @param waiter waiter to find the shards for
+   * @return the shards of the waiter, in order
+   */
+  private List<Shard<M>> shardsFor(final Waiter<M> waiter) {
+    return shardsFor(waiter.key(), waiter.type());
+  }
 
-          while (it.hasNext()) {
-            final Predicate<M> predicate = it.next();
+  /**
+   * Find the shards that metadata with the given shard key or type can be assigned to.
+   *
+   * @param key shard key of the metadata, or {@code null} if unknown
+   * @param type type of the metadata, or {@code null} if unknown
+   * @return the shards of the metadata, in order
+   */
+  private List<Shard<M>> shardsFor(final Object key, final Class<?> type) {
+    if (shards.length == 1) {
+      return Collections.singletonList(shards[0]);
+    }
 
-            if (predicate.test(iterator.next())) {
-              iterator.remove();
-              it.remove();
-            }
-          }
-        }
+    /* the type is only a shard key if metadata is sharded by type */
+    final Object routing = key != null ? key : shardKey == null ? type : null;
 
-        if (currentPredicates.isEmpty()) {
-          break;
-        }
+    if (routing == null) {
+      return Arrays.asList(shards);
+    }
 
-        processedLock.wait();
-      }
+    return Collections.singletonList(shardForKey(routing));
+  }
 
-      return this;
+  /**
+   * Complete the given future exceptionally with a {@link TimeoutException} if it has not been
+   * completed before the given timeout.
+   *
+   * @param future future to time out
+   * @param timeout timeout to apply
+   * @param unit unit of the timeout
+   * @return the given future
+   */
+  private CompletableFuture<Void> timeout(
+      final CompletableFuture<Void> future, final long timeout, final TimeUnit unit
+  ) {
+    if (future.isDone()) {
+      return future;
     }
+
+    final ScheduledFuture<?> task = scheduler.schedule(() -> {
+      future.completeExceptionally(
+          new TimeoutException("Timed out after " + timeout + " " + unit));
+    }, timeout, unit);
+
+    future.whenComplete((result, e) -> task.cancel(false));
+    return future;
   }
 
   /**
-   * Evaluate the list of deferred action after the list of masks has been updated.
-   * <p>
-   * <p>Must be invoked under {@link #maskLock}
+   * Evaluate the deferred actions after a mask has been removed.
+   *
+   * <p>Only actions which were blocked by the removed mask are evaluated. Actions which are still
+   * masked are blocked by the next mask that matches them. If releases are paced, released actions
+   * are queued in the pacer, and the pacer has to be drained by the caller. Otherwise they are
+   * added to the given list, and have to be dispatched by the caller.
+   *
+   * <p>Must be invoked under the mask lock of the shard.
+   *
+   * @param shard the shard to evaluate
+   * @param removed the mask that was removed
+   * @param unpaced list to add released actions to if releases are not paced
+   * @return the number of released actions
    */
-  private void evaluateDeferredAfterMaskUpdate() {
-    final Iterator<DeferredAction<M>> it = this.deferred.iterator();
+  private int evaluateDeferredAfterMaskUpdate(
+      final Shard<M> shard, final Predicate<M> removed, final List<DeferredAction<M>> unpaced
+  ) {
+    final MaskSet<M> masks = this.masks;
+    final List<DeferredAction<M>> paced = pacer == null ? null : new ArrayList<>();
+    int released = 0;
+
+    final Iterator<DeferredAction<M>> it = shard.deferred.takeBlockedBy(removed).iterator();
 
     while (it.hasNext()) {
       final DeferredAction<M> d = it.next();
 
-      /* is the current action still masked? */
-      if (masks.stream().anyMatch(p -> p.test(d.metadata))) {
+      /* is the current action still masked by another mask? */
+      final Predicate<M> blocker = masks.firstMatch(d.metadata);
+
+      if (blocker != null) {
+        shard.deferred.block(d, blocker);
+        continue;
+      }
+
+      shard.deferred.remove(d);
+      released++;
+
+      if (paced != null) {
+        paced.add(d);
         continue;
       }
 
-      it.remove();
-      d.runnable.run();
+      onReleased(d);
+      unpaced.add(d);
+    }
+
+    if (paced != null && !paced.isEmpty()) {
+      pacer.offer(paced);
     }
+
+    return released;
   }
 
   /**
-   * Defer the given action.
+   * Bind the given action to a future.
    *
    * @param metadata metadata associated with the action
-   * @param action action to defer
+   * @param action action to bind
    * @param future future that will be bound to the action
    * @param <T> return type of the action
-   * @return a deferred action container
+   * @return a runnable that will run the action and complete the future
    */
-  private <T> DeferredAction<M> deferAction(
+  private <T> Runnable bindAction(
       final M metadata, final Supplier<? extends CompletionStage<T>> action,
-      final CompletableFuture<T> future
+      final CondoFuture<T> future
   ) {
-    return new DeferredAction<>(metadata, () -> {
+    final long scheduled = listener == null ? 0L : ticker.nanoTime();
+
+    return () -> {
+      if (future.isCancelled()) {
+        onSkipped();
+        return;
+      }
+
+      final long started = onStarted(metadata);
       final CompletionStage<? extends T> resultFuture;
 
       try {
         resultFuture = action.get();
       } catch (final Exception e) {
         future.completeExceptionally(e);
-        markProcessed(metadata);
+        markProcessed(metadata, scheduled, started, e);
         return;
       }
 
-      resultFuture.handleAsync((result, e) -> {
+      /* only stages which are also futures can be cancelled */
+      if (resultFuture instanceof Future) {
+        future.onCancel(((Future<?>) resultFuture)::cancel);
+      }
+
+      final BiFunction<T, Throwable, Void> handle = (result, e) -> {
         if (e != null) {
           future.completeExceptionally(e);
         } else {
           future.complete(result);
         }
 
-        markProcessed(metadata);
+        markProcessed(metadata, scheduled, started, e);
         return null;
-      }, executor);
-    });
+      };
+
+      if (executionMode == ExecutionMode.SINGLE_HOP) {
+        resultFuture.handle(handle);
+      } else {
+        resultFuture.handleAsync(handle, executor);
+      }
+    };
+  }
+
+  /**
+   * Bind the given synchronous action to a future.
+   *
+   * <p>The returned runnable runs the action and completes the future, and is intended to be run
+   * as a single executor task.
+   *
+   * @param metadata metadata associated with the action
+   * @param action action to bind
+   * @param future future that will be bound to the action
+   * @param <T> return type of the action
+   * @return a runnable that will run the action and complete the future
+   */
+  private <T> Runnable bindSyncAction(
+      final M metadata, final Supplier<T> action, final CondoFuture<T> future
+  ) {
+    final long scheduled = listener == null ? 0L : ticker.nanoTime();
+
+    return () -> {
+      if (future.isCancelled()) {
+        onSkipped();
+        return;
+      }
+
+      final long started = onStarted(metadata);
+      final T result;
+
+      try {
+        result = action.get();
+      } catch (final Exception e) {
+        future.completeExceptionally(e);
+        markProcessed(metadata, scheduled, started, e);
+        return;
+      }
+
+      future.complete(result);
+      markProcessed(metadata, scheduled, started, null);
+    };
+  }
+
+  /**
+   * Account for an action which was released but is not run, because it was cancelled or the
+   * executor rejected it.
+   */
+  private void onSkipped() {
+    if (pacer != null) {
+      pacer.completed();
+    }
+  }
+
+  /**
+   * Notify the listener that an action has started.
+   *
+   * @param metadata metadata associated with the action
+   * @return the time that the action started, or {@code 0} if there is no listener
+   */
+  private long onStarted(final M metadata) {
+    if (listener == null) {
+      return 0L;
+    }
+
+    listener.onStarted(metadata);
+    return ticker.nanoTime();
   }
 
   /**
    * Mark the given metadata as processed.
    *
    * @param metadata Metadata to mark as processed.
+   * @param scheduled the time that the action was scheduled
+   * @param started the time that the action started
+   * @param error the error that the action failed with, or {@code null}
+   */
+  private void markProcessed(
+      final M metadata, final long scheduled, final long started, final Throwable error
+  ) {
+    if (listener != null) {
+      final long now = ticker.nanoTime();
+      listener.onCompleted(metadata, now - started, now - scheduled, error);
+    }
+
+    recordProcessed(metadata);
+
+    if (pacer != null) {
+      pacer.completed();
+    }
+  }
+
+  /**
+   * Record that the given metadata has been processed, in this condo and every condo that it is a
+   * scope of.
+   *
+   * @param metadata metadata that has been processed
    */
-  private void markProcessed(final M metadata) {
-    synchronized (processedLock) {
-      processed.add(metadata);
-      onceProcessed.add(metadata);
-      processedLock.notifyAll();
+  private void recordProcessed(final M metadata) {
+    final Shard<M> shard = shardFor(metadata);
+    final List<Waiter<M>> satisfied;
+
+    shard.processedLock.lock();
+
+    try {
+      final boolean consumed = !shard.waiters.isEmpty() && shard.waiters.offer(metadata);
+      shard.history.add(metadata, ticker.nanoTime(), consumed);
+      satisfied = shard.waiters.drainSatisfied();
+    } finally {
+      shard.processedLock.unlock();
+    }
+
+    satisfied.forEach(Waiter::signal);
+
+    if (parent != null) {
+      parent.recordProcessed(metadata);
     }
   }
 
@@ -257,21 +1498,286 @@ public class CoreCondo<M> implements Condo<M> {
 
   public static class Builder<M> {
     private Optional<Executor> executor = Optional.empty();
+    private Optional<ExecutionMode> executionMode = Optional.empty();
+    private Optional<ScheduledExecutorService> scheduler = Optional.empty();
+    private Optional<Ticker> ticker = Optional.empty();
+    private Optional<Retention> retention = Optional.empty();
+    private Optional<Integer> shards = Optional.empty();
+    private Optional<Function<? super M, ?>> shardKey = Optional.empty();
+    private Optional<CondoListener<? super M>> listener = Optional.empty();
+    private Optional<Integer> deferredCapacity = Optional.empty();
+    private Optional<OverflowPolicy> overflowPolicy = Optional.empty();
+    private Optional<ReleaseOrder<M>> releaseOrder = Optional.empty();
+    private Optional<ReleasePacing> releasePacing = Optional.empty();
+    private Optional<Long> deferredTtl = Optional.empty();
+    private Optional<ExpiryPolicy> expiryPolicy = Optional.empty();
 
     public Builder<M> executor(final Executor executor) {
       this.executor = Optional.of(executor);
       return this;
     }
 
-    public Condo<M> build() {
+    /**
+     * Run every action on a new virtual thread.
+     *
+     * <p>Requires Java 21 or later, where this is provided through the multi-release jar.
+     *
+     * @return this builder
+     * @throws UnsupportedOperationException if virtual threads are not supported by the runtime
+     */
+    public Builder<M> virtualThreads() {
+      this.executor = Optional.of(VirtualThreads.executor());
+      return this;
+    }
+
+    /**
+     * Run every action, timeout and timestamp in the virtual time of the given executor.
+     *
+     * <p>This is the same as using it as the executor, the scheduler and the ticker.
+     *
+     * @param executor virtual time executor to use
+     * @return this builder
+     */
+    public Builder<M> virtualTime(final VirtualTimeExecutor executor) {
+      this.executor = Optional.of(executor);
+      this.scheduler = Optional.of(executor);
+      this.ticker = Optional.of(executor);
+      return this;
+    }
+
+    /**
+     * Configure how actions are handed over to the executor.
+     *
+     * <p>Defaults to {@link ExecutionMode#HANDOFF}.
+     *
+     * @param executionMode execution mode to use
+     * @return this builder
+     */
+    public Builder<M> executionMode(final ExecutionMode executionMode) {
+      this.executionMode = Optional.of(executionMode);
+      return this;
+    }
+
+    /**
+     * Configure the scheduler used to time out waits.
+     *
+     * <p>Defaults to a single daemon thread shared by all instances.
+     *
+     * @param scheduler scheduler to use
+     * @return this builder
+     */
+    public Builder<M> scheduler(final ScheduledExecutorService scheduler) {
+      this.scheduler = Optional.of(scheduler);
+      return this;
+    }
+
+    /**
+     * Configure the ticker used to timestamp history.
+     *
+     * @param ticker ticker to use
+     * @return this builder
+     */
+    public Builder<M> ticker(final Ticker ticker) {
+      this.ticker = Optional.of(ticker);
+      return this;
+    }
+
+    /**
+     * Configure how much history of processed actions is retained.
+     *
+     * <p>Defaults to {@link Retention#unbounded()}.
+     *
+     * @param retention retention to use
+     * @return this builder
+     */
+    public Builder<M> retention(final Retention retention) {
+      this.retention = Optional.of(retention);
+      return this;
+    }
+
+    /**
+     * Stripe deferred actions, history and waits over the given number of shards.
+     *
+     * <p>Actions in different shards are deferred and marked as processed without contending on
+     * the same locks. Masks are shared by all shards, so unmasking visits every shard.
+     *
+     * <p>Waits and pumps are only registered in a single shard if all of their predicates are
+     * {@link KeyedPredicate}s with the same key, or {@link TypedPredicate}s of the same type while
+     * the shard key is the type of metadata. Otherwise they are registered in every shard, and are
+     * not matched in the order actions were processed across shards.
+     *
+     * <p>Retention applies to each shard individually. Defaults to a single shard.
+     *
+     * @param shards number of shards to use
+     * @return this builder
+     */
+    public Builder<M> shards(final int shards) {
+      if (shards < 1) {
+        throw new IllegalArgumentException("Shards must be positive: " + shards);
+      }
+
+      this.shards = Optional.of(shards);
+      return this;
+    }
+
+    /**
+     * Configure the function deriving the shard key of metadata.
+     *
+     * <p>Defaults to the type of metadata. Metadata with a {@code null} key is assigned to the
+     * first shard.
+     *
+     * @param shardKey function deriving the shard key
+     * @return this builder
+     */
+    public Builder<M> shardKey(final Function<? super M, ?> shardKey) {
+      this.shardKey = Optional.of(shardKey);
+      return this;
+    }
+
+    /**
+     * Add a listener to notify of internal events, like {@link CondoMetrics}.
+     *
+     * <p>Can be called more than once, in which case every listener is notified in the order they
+     * were added.
+     *
+     * <p>Defaults to no listener, in which case no events are recorded.
+     *
+     * @param listener listener to notify
+     * @return this builder
+     * @see CondoListener#composite(CondoListener[])
+     */
+    public Builder<M> listener(final CondoListener<? super M> listener) {
+      final CondoListener<? super M> added = this.listener
+          .<CondoListener<? super M>>map(previous -> CondoListener.composite(previous, listener))
+          .orElse(listener);
+      this.listener = Optional.of(added);
+      return this;
+    }
+
+    /**
+     * Bound the number of deferred actions in each shard.
+     *
+     * <p>Once the deferred queue of a shard is full, masked actions are handled according to the
+     * given policy. Defaults to no bound.
+     *
+     * @param capacity maximum number of deferred actions in each shard
+     * @param overflowPolicy how to handle masked actions when the queue is full
+     * @return this builder
+     */
+    public Builder<M> deferredCapacity(final int capacity, final OverflowPolicy overflowPolicy) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+      }
+
+      this.deferredCapacity = Optional.of(capacity);
+      this.overflowPolicy = Optional.of(overflowPolicy);
+      return this;
+    }
+
+    /**
+     * Configure the order in which deferred actions are released.
+     *
+     * <p>Defaults to {@link ReleaseOrder#fifo()}.
+     *
+     * @param releaseOrder release order to use
+     * @return this builder
+     */
+    public Builder<M> releaseOrder(final ReleaseOrder<M> releaseOrder) {
+      this.releaseOrder = Optional.of(releaseOrder);
+      return this;
+    }
+
+    /**
+     * Configure how the release of actions is paced when a mask is removed.
+     *
+     * <p>Paced actions are released in release order, but can be overtaken by actions released
+     * through pumps, which are never paced. Defaults to {@link ReleasePacing#unpaced()}.
+     *
+     * @param releasePacing release pacing to use
+     * @return this builder
+     */
+    public Builder<M> releasePacing(final ReleasePacing releasePacing) {
+      this.releasePacing = Optional.of(releasePacing);
+      return this;
+    }
+
+    /**
+     * Expire actions which have been deferred for longer than the given time to live.
+     *
+     * <p>Expired actions are handled according to the given policy, even if they are still masked.
+     * Actions are expired by a single timer wheel on the scheduler, and might expire up to a
+     * thirty-second of the time to live late. Defaults to deferred actions never expiring.
+     *
+     * @param ttl how long actions may be deferred
+     * @param unit unit of the time to live
+     * @param expiryPolicy how to handle expired actions
+     * @return this builder
+     */
+    public Builder<M> deferredTtl(
+        final long ttl, final TimeUnit unit, final ExpiryPolicy expiryPolicy
+    ) {
+      if (ttl < 1) {
+        throw new IllegalArgumentException("Time to live must be positive: " + ttl);
+      }
+
+      this.deferredTtl = Optional.of(unit.toNanos(ttl));
+      this.expiryPolicy = Optional.of(expiryPolicy);
+      return this;
+    }
+
+    public CoreCondo<M> build() {
       final Executor e = this.executor.orElseGet(ForkJoinPool::commonPool);
-      return new CoreCondo<>(e);
+      final ExecutionMode m = this.executionMode.orElse(ExecutionMode.HANDOFF);
+      final ScheduledExecutorService s = this.scheduler.orElseGet(() -> DefaultScheduler.INSTANCE);
+      final Ticker t = this.ticker.orElseGet(Ticker::system);
+      final Retention r = this.retention.orElseGet(Retention::unbounded);
+
+      final ReleaseOrder<M> ro = this.releaseOrder.orElseGet(ReleaseOrder::fifo);
+
+      @SuppressWarnings("unchecked")
+      final Shard<M>[] shards = new Shard[this.shards.orElse(1)];
+
+      for (int i = 0; i < shards.length; i++) {
+        shards[i] = new Shard<>(r, ro);
+      }
+
+      final Function<? super M, ?> k = this.shardKey.orElse(null);
+      final CondoListener<? super M> l = this.listener.orElse(null);
+      final int c = this.deferredCapacity.orElse(Integer.MAX_VALUE);
+      final OverflowPolicy o = this.overflowPolicy.orElse(OverflowPolicy.BLOCK);
+      final ReleasePacing p = this.releasePacing.orElseGet(ReleasePacing::unpaced);
+      final CoreCondo<M> condo = new CoreCondo<>(e, m, s, t, r, shards, k, l, c, o, ro);
+
+      if (deferredTtl.isPresent()) {
+        condo.expiry = new Expiry<>(deferredTtl.get(), expiryPolicy.get(), s, t, condo::expire);
+      }
+
+      if (p.isPaced()) {
+        condo.pacer = new Pacer<>(p, e, s, t, batch -> {
+          batch.forEach(condo::onReleased);
+          condo.dispatch(batch);
+        });
+      }
+
+      return condo;
     }
   }
 
-  @RequiredArgsConstructor
-  static class DeferredAction<M> {
-    private final M metadata;
-    private final Runnable runnable;
+  /**
+   * Lazily initialized scheduler, shared by all instances that are not configured with one.
+   */
+  static class DefaultScheduler {
+    static final ScheduledExecutorService INSTANCE = build();
+
+    private static ScheduledExecutorService build() {
+      final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        final Thread thread = new Thread(r, "condo-scheduler");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      scheduler.setRemoveOnCancelPolicy(true);
+      return scheduler;
+    }
   }
 }
@@ -0,0 +1,47 @@
+package eu.toolchain.condo;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * An action which has been deferred because it is masked.
+ *
+ * @param <M> type of metadata
+ */
+@RequiredArgsConstructor
+final class DeferredAction<M> {
+  final M metadata;
+  final Runnable runnable;
+  /**
+   * If the runnable has to be handed off to the executor when run on its own.
+   */
+  final boolean handoff;
+  /**
+   * Future bound to the action, failed if the action is dropped.
+   */
+  final CompletableFuture<?> future;
+  /**
+   * When the action was deferred, only recorded if a listener is configured.
+   */
+  final long deferredAt;
+  /**
+   * The order in which the action was deferred, maintained by {@link DeferredQueue}.
+   */
+  long sequence;
+  /**
+   * The rank of the action in the release order, maintained by {@link DeferredQueue} if the
+   * order ranks actions.
+   */
+  long rank;
+  /**
+   * The mask that is currently blocking the action, maintained by {@link DeferredQueue}.
+   */
+  Predicate<M> blocker;
+  /**
+   * When the action expires, if deferred actions expire. Assigned by {@link Expiry}, and removed
+   * from the wheel by {@link DeferredQueue} once the action is no longer deferred.
+   */
+  TimerWheel.Timeout<DeferredAction<M>> timeout;
+}
@@ -0,0 +1,268 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Deferred actions in the order they were deferred, indexed by the type of their metadata and by
+ * the mask that is blocking them.
+ *
+ * <p>The indexes are kept in {@link ReleaseOrder release order}, so that releasing an action never
+ * has to order the other deferred actions. For orders other than FIFO, adding and removing an
+ * action is logarithmic in the number of deferred actions.
+ *
+ * <p>Every action is blocked by exactly one mask, even if more than one mask matches it. Removing
+ * a mask therefore only has to revisit the actions that it was blocking, and move the ones that are
+ * still masked to the next mask that blocks them.
+ *
+ * <p>Not thread-safe, all access must be guarded externally.
+ *
+ * @param <M> type of metadata
+ */
+final class DeferredQueue<M> {
+  /**
+   * Comparator of actions in release order, or {@code null} if that is the order they were
+   * deferred.
+   */
+  private final Comparator<DeferredAction<M>> comparator;
+  private final ReleaseOrder.Ranker<M> ranker;
+
+  /**
+   * All actions, in the order they were deferred.
+   */
+  private final Set<DeferredAction<M>> all = new LinkedHashSet<>();
+  /**
+   * All actions in release order, or {@code null} if that is the order they were deferred.
+   */
+  private final TreeSet<DeferredAction<M>> ordered;
+  private final Map<Class<?>, Set<DeferredAction<M>>> byType = new HashMap<>();
+  private final Map<Predicate<M>, Set<DeferredAction<M>>> byMask = new IdentityHashMap<>();
+
+  private long nextSequence = 0;
+
+  DeferredQueue(final ReleaseOrder<M> order) {
+    this.comparator = order.comparator();
+    this.ranker = order.newRanker();
+    this.ordered = comparator == null ? null : new TreeSet<>(comparator);
+  }
+
+  /**
+   * Add an action blocked by the given mask.
+   *
+   * @param action action to add
+   * @param blocker mask blocking the action
+   */
+  void add(final DeferredAction<M> action, final Predicate<M> blocker) {
+    action.sequence = nextSequence++;
+
+    if (ranker != null) {
+      ranker.add(action, ordered.isEmpty() ? null : ordered.first());
+    }
+
+    all.add(action);
+
+    if (ordered != null) {
+      ordered.add(action);
+    }
+
+    byType.computeIfAbsent(typeOf(action), t -> newSet()).add(action);
+    block(action, blocker);
+  }
+
+  /**
+   * Block an action which was taken through {@link #takeBlockedBy(Predicate)} by another mask.
+   *
+   * @param action action to block
+   * @param blocker mask blocking the action
+   */
+  void block(final DeferredAction<M> action, final Predicate<M> blocker) {
+    action.blocker = blocker;
+    byMask.computeIfAbsent(blocker, m -> newSet()).add(action);
+  }
+
+  /**
+   * Take all actions blocked by the given mask.
+   *
+   * <p>Taken actions are no longer blocked by any mask, and must either be blocked by another mask
+   * through {@link #block(DeferredAction, Predicate)}, or removed through
+   * {@link #remove(DeferredAction)}.
+   *
+   * @param mask mask to take actions for
+   * @return actions blocked by the mask, in release order
+   */
+  Set<DeferredAction<M>> takeBlockedBy(final Predicate<M> mask) {
+    final Set<DeferredAction<M>> actions = byMask.remove(mask);
+    return actions == null ? Collections.emptySet() : actions;
+  }
+
+  /**
+   * Remove an action.
+   *
+   * @param action action to remove
+   */
+  void remove(final DeferredAction<M> action) {
+    if (all.contains(action)) {
+      unlink(action);
+    }
+  }
+
+  /**
+   * Remove an action which is in the queue from every index.
+   */
+  private void unlink(final DeferredAction<M> action) {
+    all.remove(action);
+
+    if (ordered != null) {
+      ordered.remove(action);
+    }
+
+    if (ranker != null) {
+      ranker.remove(action);
+    }
+
+    unindex(byType, typeOf(action), action);
+    unindex(byMask, action.blocker, action);
+    cancelTimeout(action);
+  }
+
+  /**
+   * Check if an action is still in the queue.
+   *
+   * @param action action to check
+   * @return {@code true} if the action has not been released or removed
+   */
+  boolean contains(final DeferredAction<M> action) {
+    return all.contains(action);
+  }
+
+  /**
+   * Remove every action.
+   *
+   * @return the removed actions, in the order they were deferred
+   */
+  List<DeferredAction<M>> drain() {
+    final List<DeferredAction<M>> actions = new ArrayList<>(all);
+    actions.forEach(DeferredQueue::cancelTimeout);
+
+    if (ranker != null) {
+      actions.forEach(ranker::remove);
+    }
+
+    all.clear();
+
+    if (ordered != null) {
+      ordered.clear();
+    }
+
+    byType.clear();
+    byMask.clear();
+    return actions;
+  }
+
+  int size() {
+    return all.size();
+  }
+
+  /**
+   * Iterate over all deferred actions, in the order they were deferred.
+   *
+   * <p>Removing through the iterator removes the action from the queue.
+   */
+  Iterator<DeferredAction<M>> iterator() {
+    return new RemovingIterator(all.iterator());
+  }
+
+  /**
+   * Iterate over all deferred actions with metadata of the given type, in release order.
+   *
+   * <p>Removing through the iterator removes the action from the queue.
+   *
+   * @param type type of metadata to iterate over, or {@code null} to iterate over all actions
+   */
+  Iterator<DeferredAction<M>> iterator(final Class<?> type) {
+    final Set<DeferredAction<M>> actions =
+        type == null ? (ordered == null ? all : ordered) : byType.get(type);
+
+    if (actions == null) {
+      return Collections.emptyIterator();
+    }
+
+    return new RemovingIterator(actions.iterator());
+  }
+
+  private Set<DeferredAction<M>> newSet() {
+    return comparator == null ? new LinkedHashSet<>() : new TreeSet<>(comparator);
+  }
+
+  private static <K, M> void unindex(
+      final Map<K, Set<DeferredAction<M>>> index, final K key, final DeferredAction<M> action
+  ) {
+    final Set<DeferredAction<M>> actions = index.get(key);
+
+    if (actions == null) {
+      return;
+    }
+
+    actions.remove(action);
+
+    if (actions.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  /**
+   * Remove an action from the timer wheel it might be in, so that the wheel does not keep it
+   * reachable.
+   */
+  private static void cancelTimeout(final DeferredAction<?> action) {
+    if (action.timeout != null) {
+      action.timeout.cancel();
+      action.timeout = null;
+    }
+  }
+
+  private static Class<?> typeOf(final DeferredAction<?> action) {
+    return action.metadata == null ? null : action.metadata.getClass();
+  }
+
+  /**
+   * Iterator which keeps every index up to date when removing.
+   */
+  private class RemovingIterator implements Iterator<DeferredAction<M>> {
+    private final Iterator<DeferredAction<M>> iterator;
+
+    private DeferredAction<M> current;
+
+    RemovingIterator(final Iterator<DeferredAction<M>> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public DeferredAction<M> next() {
+      current = iterator.next();
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      /* removing it again from the set being iterated does nothing */
+      iterator.remove();
+      unlink(current);
+    }
+  }
+}
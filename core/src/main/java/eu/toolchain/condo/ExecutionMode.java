@@ -0,0 +1,22 @@
+package eu.toolchain.condo;
+
+/**
+ * How {@link CoreCondo} hands actions over to its executor.
+ */
+public enum ExecutionMode {
+  /**
+   * Run synchronous actions in one executor task, and complete the future of every action in a
+   * separate executor task.
+   *
+   * <p>This is the default.
+   */
+  HANDOFF,
+
+  /**
+   * Run synchronous actions and complete their futures in a single executor task.
+   *
+   * <p>Futures of asynchronous actions are completed directly on the thread which completes the
+   * stage returned by the action, or immediately if the stage is already completed.
+   */
+  SINGLE_HOP
+}
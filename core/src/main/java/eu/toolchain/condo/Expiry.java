@@ -0,0 +1,99 @@
+package eu.toolchain.condo;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Expires actions which have been deferred for longer than a time to live.
+ *
+ * <p>Every deferred action is added to a single {@link TimerWheel}, which is ticked by one task on
+ * the scheduler while it is not empty. The cost of the timer is therefore the same however many
+ * actions are deferred.
+ *
+ * <p>Actions are removed from the wheel once they are no longer deferred, but might concurrently
+ * expire, so expired actions have to be checked to still be deferred.
+ *
+ * @param <M> type of metadata
+ */
+final class Expiry<M> {
+  /**
+   * Number of ticks per time to live, which bounds how late an action might expire.
+   */
+  static final int TICKS_PER_TTL = 32;
+  /**
+   * Number of buckets in the wheel, large enough that every action expires in its first round.
+   */
+  static final int BUCKETS = 64;
+
+  private final long ttlNanos;
+  private final ExpiryPolicy policy;
+  private final ScheduledExecutorService scheduler;
+  private final Ticker ticker;
+  private final Consumer<List<DeferredAction<M>>> expire;
+  private final TimerWheel<DeferredAction<M>> wheel;
+
+  /**
+   * If a tick has been scheduled.
+   */
+  private final AtomicBoolean ticking = new AtomicBoolean();
+
+  Expiry(
+      final long ttlNanos, final ExpiryPolicy policy, final ScheduledExecutorService scheduler,
+      final Ticker ticker, final Consumer<List<DeferredAction<M>>> expire
+  ) {
+    this.ttlNanos = ttlNanos;
+    this.policy = policy;
+    this.scheduler = scheduler;
+    this.ticker = ticker;
+    this.expire = expire;
+    this.wheel = new TimerWheel<>(Math.max(1L, ttlNanos / TICKS_PER_TTL), BUCKETS,
+        ticker.nanoTime());
+  }
+
+  ExpiryPolicy policy() {
+    return policy;
+  }
+
+  long ttlNanos() {
+    return ttlNanos;
+  }
+
+  /**
+   * Add an action which was just deferred.
+   *
+   * <p>Must be invoked under the mask lock of the shard that the action was deferred in.
+   *
+   * @param action action to add
+   * @param deferredAt when the action was deferred
+   */
+  void add(final DeferredAction<M> action, final long deferredAt) {
+    action.timeout = wheel.add(action, deferredAt + ttlNanos);
+    scheduleTick();
+  }
+
+  private void scheduleTick() {
+    if (ticking.compareAndSet(false, true)) {
+      scheduler.schedule(this::tick, wheel.tickNanos(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void tick() {
+    try {
+      final List<DeferredAction<M>> expired = wheel.expire(ticker.nanoTime());
+
+      if (!expired.isEmpty()) {
+        expire.accept(expired);
+      }
+    } finally {
+      ticking.set(false);
+
+      /* actions might have been added since the wheel was expired */
+      if (!wheel.isEmpty()) {
+        scheduleTick();
+      }
+    }
+  }
+}
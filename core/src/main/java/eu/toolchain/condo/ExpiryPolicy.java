@@ -0,0 +1,20 @@
+package eu.toolchain.condo;
+
+/**
+ * How {@link CoreCondo} handles an action which has been deferred for longer than its time to
+ * live.
+ *
+ * @see CoreCondo.Builder#deferredTtl(long, java.util.concurrent.TimeUnit, ExpiryPolicy)
+ */
+public enum ExpiryPolicy {
+  /**
+   * Release the action, as if it was no longer masked.
+   */
+  RELEASE,
+
+  /**
+   * Drop the action without running it, failing its future with a
+   * {@link java.util.concurrent.TimeoutException}.
+   */
+  FAIL
+}
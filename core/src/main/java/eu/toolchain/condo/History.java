@@ -0,0 +1,172 @@
+package eu.toolchain.condo;
+
+/**
+ * Ring buffer of processed metadata.
+ *
+ * <p>Every entry is assigned a monotonically increasing sequence number. This allows waiters to
+ * keep track of how far they have observed the history, and to detect when entries that they have
+ * not observed yet have been evicted.
+ *
+ * <p>Not thread-safe, all access must be guarded externally.
+ *
+ * @param <M> type of metadata
+ */
+final class History<M> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int maxEntries;
+  private final long maxAgeNanos;
+
+  private Object[] entries;
+  private long[] timestamps;
+  private boolean[] consumed;
+
+  /**
+   * Sequence number of the oldest retained entry.
+   */
+  private long head = 0;
+  /**
+   * Sequence number of the next entry to be added.
+   */
+  private long tail = 0;
+  /**
+   * Sequence number of the most recently evicted entry that was never consumed.
+   */
+  private long lastEvictedUnconsumed = -1;
+
+  History(final Retention retention) {
+    this.maxEntries = retention.maxEntries();
+    this.maxAgeNanos = retention.maxAgeNanos();
+
+    final int capacity =
+        maxEntries == Retention.UNBOUNDED ? INITIAL_CAPACITY : Math.min(maxEntries,
+            INITIAL_CAPACITY);
+
+    this.entries = new Object[capacity];
+    this.timestamps = new long[capacity];
+    this.consumed = new boolean[capacity];
+  }
+
+  long head() {
+    return head;
+  }
+
+  long tail() {
+    return tail;
+  }
+
+  @SuppressWarnings("unchecked")
+  M get(final long sequence) {
+    return (M) entries[index(sequence)];
+  }
+
+  boolean isConsumed(final long sequence) {
+    return consumed[index(sequence)];
+  }
+
+  void consume(final long sequence) {
+    consumed[index(sequence)] = true;
+  }
+
+  /**
+   * Test if any entry at or after the given sequence number has been evicted.
+   */
+  boolean isEvicted(final long sequence) {
+    return head > sequence;
+  }
+
+  /**
+   * Test if any entry at or after the given sequence number has been evicted without having been
+   * consumed.
+   */
+  boolean isUnconsumedEvicted(final long sequence) {
+    return lastEvictedUnconsumed >= sequence;
+  }
+
+  /**
+   * Add the given metadata to the history, evicting entries according to the retention.
+   *
+   * @param metadata metadata to add
+   * @param now current time in nanoseconds
+   * @param consumed if the entry has already been consumed
+   */
+  void add(final M metadata, final long now, final boolean consumed) {
+    evictExpired(now);
+
+    if (maxEntries == 0) {
+      if (!consumed) {
+        lastEvictedUnconsumed = tail;
+      }
+
+      head = ++tail;
+      return;
+    }
+
+    if (tail - head == maxEntries) {
+      evictOldest();
+    }
+
+    if (tail - head == entries.length) {
+      grow();
+    }
+
+    final int index = index(tail++);
+    entries[index] = metadata;
+    timestamps[index] = now;
+    this.consumed[index] = consumed;
+  }
+
+  /**
+   * Evict all entries which are older than the retention permits.
+   *
+   * @param now current time in nanoseconds
+   */
+  void evictExpired(final long now) {
+    if (maxAgeNanos == Retention.UNBOUNDED) {
+      return;
+    }
+
+    while (head < tail && now - timestamps[index(head)] > maxAgeNanos) {
+      evictOldest();
+    }
+  }
+
+  private void evictOldest() {
+    final int index = index(head);
+
+    if (!consumed[index]) {
+      lastEvictedUnconsumed = head;
+    }
+
+    entries[index] = null;
+    head++;
+  }
+
+  private void grow() {
+    int capacity = entries.length * 2;
+
+    if (maxEntries != Retention.UNBOUNDED) {
+      capacity = Math.min(capacity, maxEntries);
+    }
+
+    final Object[] entries = new Object[capacity];
+    final long[] timestamps = new long[capacity];
+    final boolean[] consumed = new boolean[capacity];
+
+    for (long sequence = head; sequence < tail; sequence++) {
+      final int from = index(sequence);
+      final int to = (int) (sequence % capacity);
+      entries[to] = this.entries[from];
+      timestamps[to] = this.timestamps[from];
+      consumed[to] = this.consumed[from];
+    }
+
+    this.entries = entries;
+    this.timestamps = timestamps;
+    this.consumed = consumed;
+  }
+
+  private int index(final long sequence) {
+    return (int) (sequence % entries.length);
+  }
+}
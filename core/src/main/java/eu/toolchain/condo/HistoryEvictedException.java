@@ -0,0 +1,14 @@
+package eu.toolchain.condo;
+
+/**
+ * Thrown when a wait can not be answered because history that it needs has been evicted.
+ *
+ * @see Retention
+ */
+public class HistoryEvictedException extends IllegalStateException {
+  private static final long serialVersionUID = 1L;
+
+  public HistoryEvictedException(final String message) {
+    super(message);
+  }
+}
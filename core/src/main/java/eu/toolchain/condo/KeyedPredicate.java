@@ -0,0 +1,55 @@
+package eu.toolchain.condo;
+
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * A predicate which only matches metadata with a given shard key.
+ *
+ * <p>Waits and pumps made up of keyed predicates with the same key are only registered in the
+ * shard of that key, instead of in every shard of a sharded {@link CoreCondo}.
+ *
+ * <p>The key is not tested, the wrapped predicate must never match metadata with another shard
+ * key.
+ *
+ * @param <M> type of metadata
+ * @see CoreCondo.Builder#shardKey(java.util.function.Function)
+ */
+public final class KeyedPredicate<M> implements Predicate<M> {
+  private final Object key;
+  private final Predicate<M> predicate;
+
+  private KeyedPredicate(final Object key, final Predicate<M> predicate) {
+    this.key = key;
+    this.predicate = predicate;
+  }
+
+  /**
+   * The shard key of all metadata matched by this predicate.
+   */
+  public Object key() {
+    return key;
+  }
+
+  @Override
+  public boolean test(final M metadata) {
+    return predicate.test(metadata);
+  }
+
+  @Override
+  public String toString() {
+    return "KeyedPredicate(key=" + key + ", predicate=" + predicate + ")";
+  }
+
+  /**
+   * Build a predicate that only matches metadata with the given shard key.
+   *
+   * @param key shard key of all metadata matched by the predicate
+   * @param predicate predicate to wrap
+   * @param <M> type of metadata
+   * @return a new keyed predicate
+   */
+  public static <M> KeyedPredicate<M> of(final Object key, final Predicate<M> predicate) {
+    return new KeyedPredicate<>(Objects.requireNonNull(key, "key"), predicate);
+  }
+}
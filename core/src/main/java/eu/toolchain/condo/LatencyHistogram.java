@@ -0,0 +1,83 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds, with log-linear buckets.
+ *
+ * <p>Values are counted in buckets whose width doubles every 128 buckets, which keeps the relative
+ * error of every recorded value within 1/128, below one percent, across the whole range of
+ * {@code long}.
+ * Recording a value does not allocate or lock, but reading the histogram is comparatively
+ * expensive and not atomic with respect to concurrent recording.
+ */
+public final class LatencyHistogram {
+  /**
+   * Number of bits of precision, values are exact below {@code 1 << PRECISION}.
+   */
+  static final int PRECISION = 8;
+  static final int SUB_BUCKETS = 1 << PRECISION;
+  static final int HALF = SUB_BUCKETS / 2;
+  static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - PRECISION) * HALF;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  /**
+   * Record a value, negative values are recorded as zero.
+   *
+   * @param nanos value to record
+   */
+  public void record(final long nanos) {
+    final long value = Math.max(0L, nanos);
+    counts.incrementAndGet(indexOf(value));
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Take a snapshot of the recorded values.
+   *
+   * @return a snapshot of the histogram
+   */
+  public LatencySnapshot snapshot() {
+    final long[] counts = new long[BUCKETS];
+    long total = 0L;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = this.counts.get(i);
+      total += counts[i];
+    }
+
+    /* the bucket counts are authoritative, the other summaries might be ahead of them */
+    return new LatencySnapshot(counts, total, sum.sum(), max.get());
+  }
+
+  static int indexOf(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (PRECISION - 1);
+    final int sub = (int) (value >>> shift);
+    return SUB_BUCKETS + (shift - 1) * HALF + (sub - HALF);
+  }
+
+  /**
+   * The highest value that is counted in the given bucket.
+   */
+  static long highestValueOf(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    final int shift = (index - SUB_BUCKETS) / HALF + 1;
+    final long sub = (index - SUB_BUCKETS) % HALF + HALF;
+    final long highest = ((sub + 1) << shift) - 1;
+    /* the last bucket overflows */
+    return highest < 0 ? Long.MAX_VALUE : highest;
+  }
+}
@@ -0,0 +1,101 @@
+package eu.toolchain.condo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A listener which records latency histograms of actions, grouped by the type of their metadata.
+ *
+ * <p>For every type of metadata, three latencies are recorded:
+ * <ul>
+ * <li>how long released actions were deferred,</li>
+ * <li>how long actions took to execute since they started,</li>
+ * <li>and how long actions took end-to-end since they were scheduled.</li>
+ * </ul>
+ *
+ * <p>Metadata generated by {@code @AutoCondo} has one type per method, so latencies are recorded
+ * per method. Actions with {@code null} metadata are grouped under {@link Void}.
+ */
+public class LatencyHistograms implements CondoListener<Object> {
+  private final ConcurrentHashMap<Class<?>, Latencies> byType = new ConcurrentHashMap<>();
+
+  @Override
+  public void onReleased(final Object metadata, final long deferredNanos) {
+    latencies(metadata).deferred.record(deferredNanos);
+  }
+
+  @Override
+  public void onCompleted(
+      final Object metadata, final long executionNanos, final long totalNanos,
+      final Throwable error
+  ) {
+    final Latencies latencies = latencies(metadata);
+    latencies.execution.record(executionNanos);
+    latencies.endToEnd.record(totalNanos);
+  }
+
+  /**
+   * Latencies of every type of metadata that has been seen so far.
+   *
+   * @return an unmodifiable view of latencies by the type of metadata
+   */
+  public Map<Class<?>, Latencies> byType() {
+    return Collections.unmodifiableMap(byType);
+  }
+
+  /**
+   * Latencies of the given type of metadata.
+   *
+   * @param type type of metadata
+   * @return latencies of the type, which are empty if the type has not been seen
+   */
+  public Latencies latencies(final Class<?> type) {
+    return byType.computeIfAbsent(type, t -> new Latencies());
+  }
+
+  private Latencies latencies(final Object metadata) {
+    final Class<?> type = metadata == null ? Void.class : metadata.getClass();
+    final Latencies latencies = byType.get(type);
+    return latencies != null ? latencies : latencies(type);
+  }
+
+  /**
+   * Latency histograms of a single type of metadata.
+   */
+  public static final class Latencies {
+    private final LatencyHistogram deferred = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+
+    private Latencies() {
+    }
+
+    /**
+     * How long released actions were deferred.
+     */
+    public LatencyHistogram deferred() {
+      return deferred;
+    }
+
+    /**
+     * How long actions took to execute since they started.
+     */
+    public LatencyHistogram execution() {
+      return execution;
+    }
+
+    /**
+     * How long actions took since they were scheduled, until they completed.
+     */
+    public LatencyHistogram endToEnd() {
+      return endToEnd;
+    }
+
+    @Override
+    public String toString() {
+      return "Latencies(deferred=" + deferred.snapshot() + ", execution=" + execution.snapshot()
+          + ", endToEnd=" + endToEnd.snapshot() + ")";
+    }
+  }
+}
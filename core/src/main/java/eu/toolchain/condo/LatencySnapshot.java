@@ -0,0 +1,79 @@
+package eu.toolchain.condo;
+
+/**
+ * An immutable snapshot of a {@link LatencyHistogram}.
+ */
+public final class LatencySnapshot {
+  private final long[] counts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  LatencySnapshot(final long[] counts, final long count, final long sum, final long max) {
+    this.counts = counts;
+    this.count = count;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  /**
+   * Number of recorded values.
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Largest recorded value, in nanoseconds.
+   */
+  public long max() {
+    return max;
+  }
+
+  /**
+   * Mean of the recorded values in nanoseconds, or {@code 0} if no values have been recorded.
+   */
+  public double mean() {
+    return count == 0 ? 0D : (double) sum / count;
+  }
+
+  /**
+   * The value at the given percentile.
+   *
+   * <p>The returned value is the highest value that is equivalent to the value at the percentile,
+   * within the precision of the histogram, but never larger than the largest recorded value.
+   *
+   * @param percentile percentile to get the value for, between {@code 0} and {@code 100}
+   * @return the value at the percentile in nanoseconds, or {@code 0} if no values have been
+   * recorded
+   */
+  public long percentile(final double percentile) {
+    if (percentile < 0D || percentile > 100D) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+
+    if (count == 0) {
+      return 0L;
+    }
+
+    final long rank = Math.max(1L, (long) Math.ceil(percentile / 100D * count));
+    long seen = 0L;
+
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.highestValueOf(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencySnapshot(count=" + count + ", mean=" + (long) mean() + ", p50="
+        + percentile(50D) + ", p90=" + percentile(90D) + ", p99=" + percentile(99D) + ", p999="
+        + percentile(99.9D) + ", max=" + max + ")";
+  }
+}
@@ -0,0 +1,198 @@
+package eu.toolchain.condo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * An immutable set of masks.
+ *
+ * <p>Every update produces a new instance, which allows readers to test metadata against a
+ * consistent snapshot without any coordination.
+ *
+ * <p>Masks that are {@link TypedPredicate}s are partitioned by their type, and are only tested
+ * against metadata of that type. Masks that are {@link ExactPredicate}s are indexed by their value,
+ * and are found through a hash lookup instead of being tested.
+ *
+ * @param <M> type of metadata
+ */
+final class MaskSet<M> {
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static final MaskSet EMPTY =
+      new MaskSet<>(new Predicate[0], Collections.emptyMap(), Collections.emptyMap());
+
+  private final Predicate<M>[] masks;
+  private final Map<Class<?>, Predicate<M>[]> typed;
+  private final Map<Object, Predicate<M>[]> exact;
+
+  private MaskSet(
+      final Predicate<M>[] masks, final Map<Class<?>, Predicate<M>[]> typed,
+      final Map<Object, Predicate<M>[]> exact
+  ) {
+    this.masks = masks;
+    this.typed = typed;
+    this.exact = exact;
+  }
+
+  boolean isEmpty() {
+    return masks.length == 0 && typed.isEmpty() && exact.isEmpty();
+  }
+
+  /**
+   * Test if the given metadata is matched by any mask in this set.
+   *
+   * @param metadata metadata to test
+   * @return {@code true} if the metadata is masked
+   */
+  boolean matches(final M metadata) {
+    return firstMatch(metadata) != null;
+  }
+
+  /**
+   * Find the first mask in this set that matches the given metadata.
+   *
+   * @param metadata metadata to test
+   * @return the first matching mask, or {@code null} if the metadata is not masked
+   */
+  Predicate<M> firstMatch(final M metadata) {
+    final Predicate<M> mask = firstMatch(masks, metadata);
+
+    if (mask != null || metadata == null) {
+      return mask;
+    }
+
+    if (!typed.isEmpty()) {
+      final Predicate<M>[] masks = typed.get(metadata.getClass());
+
+      if (masks != null) {
+        final Predicate<M> typedMask = firstMatch(masks, metadata);
+
+        if (typedMask != null) {
+          return typedMask;
+        }
+      }
+    }
+
+    if (exact.isEmpty()) {
+      return null;
+    }
+
+    final Predicate<M>[] masks = exact.get(metadata);
+    return masks == null ? null : masks[0];
+  }
+
+  /**
+   * Build a new set with the given mask added.
+   *
+   * @param mask mask to add
+   * @return a new mask set
+   */
+  MaskSet<M> add(final Predicate<M> mask) {
+    if (mask instanceof TypedPredicate) {
+      return new MaskSet<>(masks, with(typed, ((TypedPredicate<M>) mask).type(), mask), exact);
+    }
+
+    if (mask instanceof ExactPredicate) {
+      return new MaskSet<>(masks, typed, with(exact, ((ExactPredicate<M>) mask).value(), mask));
+    }
+
+    return new MaskSet<>(append(masks, mask), typed, exact);
+  }
+
+  /**
+   * Build a new set with the given mask removed.
+   *
+   * <p>Masks are compared using reference equality.
+   *
+   * @param mask mask to remove
+   * @return a new mask set, or empty if the mask is not part of this set
+   */
+  Optional<MaskSet<M>> remove(final Predicate<M> mask) {
+    if (mask instanceof TypedPredicate) {
+      return without(typed, ((TypedPredicate<M>) mask).type(), mask)
+          .map(typed -> new MaskSet<>(masks, typed, exact));
+    }
+
+    if (mask instanceof ExactPredicate) {
+      return without(exact, ((ExactPredicate<M>) mask).value(), mask)
+          .map(exact -> new MaskSet<>(masks, typed, exact));
+    }
+
+    return remove(masks, mask).map(next -> new MaskSet<>(next, typed, exact));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <M> MaskSet<M> empty() {
+    return (MaskSet<M>) EMPTY;
+  }
+
+  private static <K, M> Map<K, Predicate<M>[]> with(
+      final Map<K, Predicate<M>[]> index, final K key, final Predicate<M> mask
+  ) {
+    final Map<K, Predicate<M>[]> next = new HashMap<>(index);
+    next.put(key, append(index.get(key), mask));
+    return next;
+  }
+
+  private static <K, M> Optional<Map<K, Predicate<M>[]>> without(
+      final Map<K, Predicate<M>[]> index, final K key, final Predicate<M> mask
+  ) {
+    return remove(index.get(key), mask).map(masks -> {
+      final Map<K, Predicate<M>[]> next = new HashMap<>(index);
+
+      if (masks.length == 0) {
+        next.remove(key);
+      } else {
+        next.put(key, masks);
+      }
+
+      return next;
+    });
+  }
+
+  private static <M> Predicate<M> firstMatch(final Predicate<M>[] masks, final M metadata) {
+    for (final Predicate<M> mask : masks) {
+      if (mask.test(metadata)) {
+        return mask;
+      }
+    }
+
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <M> Predicate<M>[] append(final Predicate<M>[] masks, final Predicate<M> mask) {
+    if (masks == null) {
+      return new Predicate[]{mask};
+    }
+
+    final Predicate<M>[] next = Arrays.copyOf(masks, masks.length + 1);
+    next[masks.length] = mask;
+    return next;
+  }
+
+  private static <M> Optional<Predicate<M>[]> remove(
+      final Predicate<M>[] masks, final Predicate<M> mask
+  ) {
+    if (masks == null) {
+      return Optional.empty();
+    }
+
+    for (int i = 0; i < masks.length; i++) {
+      if (masks[i] != mask) {
+        continue;
+      }
+
+      @SuppressWarnings("unchecked")
+      final Predicate<M>[] next = new Predicate[masks.length - 1];
+      System.arraycopy(masks, 0, next, 0, i);
+      System.arraycopy(masks, i + 1, next, i, masks.length - i - 1);
+      return Optional.of(next);
+    }
+
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,34 @@
+package eu.toolchain.condo;
+
+/**
+ * How {@link CoreCondo} handles a masked action when its deferred queue is full.
+ *
+ * @see CoreCondo.Builder#deferredCapacity(int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+  /**
+   * Block the thread scheduling the action until there is room in the queue, or until the action
+   * is no longer masked.
+   *
+   * <p>If the thread is interrupted while blocked, the action is rejected like with {@link #FAIL},
+   * and the interrupt flag is restored.
+   */
+  BLOCK,
+
+  /**
+   * Reject the action by failing its future with a
+   * {@link java.util.concurrent.RejectedExecutionException}.
+   */
+  FAIL,
+
+  /**
+   * Drop the oldest deferred action to make room, failing its future with a
+   * {@link java.util.concurrent.RejectedExecutionException}.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Run the action immediately, as if it was not masked.
+   */
+  BYPASS
+}
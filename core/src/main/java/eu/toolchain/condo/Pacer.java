@@ -0,0 +1,240 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Paces the release of actions unmasked by removing a mask, according to a {@link ReleasePacing}.
+ *
+ * <p>Actions are released in the order they were offered, and are handed to the executor rather
+ * than run by the releasing thread, so draining never runs actions on the scheduler. When the
+ * token bucket is empty or the executor has too many queued tasks, releasing is retried later on
+ * the scheduler. When too many actions are in flight, releasing is retried once an action
+ * completes.
+ *
+ * @param <M> type of metadata
+ */
+final class Pacer<M> {
+  /**
+   * How long to back off while the executor has too many queued tasks.
+   */
+  private static final long QUEUED_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final ReleasePacing pacing;
+  private final Executor executor;
+  private final ScheduledExecutorService scheduler;
+  private final Ticker ticker;
+  /**
+   * Hands a batch of released actions to the executor.
+   */
+  private final Consumer<List<DeferredAction<M>>> release;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * Actions waiting to be released, guarded by {@link #lock}.
+   */
+  private final Deque<DeferredAction<M>> ready = new ArrayDeque<>();
+  /**
+   * If there are actions waiting to be released, readable without holding {@link #lock}.
+   */
+  private volatile boolean pending = false;
+  /**
+   * If running has been scheduled to be retried, guarded by {@link #lock}.
+   */
+  private boolean retryScheduled = false;
+  /**
+   * If a thread is currently draining, guarded by {@link #lock}.
+   */
+  private boolean draining = false;
+
+  private double tokens;
+  private long lastRefill;
+
+  Pacer(
+      final ReleasePacing pacing, final Executor executor,
+      final ScheduledExecutorService scheduler, final Ticker ticker,
+      final Consumer<List<DeferredAction<M>>> release
+  ) {
+    this.pacing = pacing;
+    this.executor = executor;
+    this.scheduler = scheduler;
+    this.ticker = ticker;
+    this.release = release;
+    this.tokens = pacing.burst();
+    this.lastRefill = ticker.nanoTime();
+  }
+
+  /**
+   * Queue the given actions to be released, {@link #drain()} must be called to release them.
+   *
+   * @param actions actions to queue
+   */
+  void offer(final Collection<DeferredAction<M>> actions) {
+    lock.lock();
+
+    try {
+      ready.addAll(actions);
+      pending = !ready.isEmpty();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * An action is about to be handed to the executor.
+   */
+  void started() {
+    inFlight.incrementAndGet();
+  }
+
+  /**
+   * An action has been processed.
+   */
+  void completed() {
+    inFlight.decrementAndGet();
+
+    if (pending) {
+      drain();
+    }
+  }
+
+  /**
+   * Release as many queued actions as the pacing allows.
+   *
+   * <p>Only one thread drains at a time, and keeps draining until the pacing does not allow any
+   * more actions to be released. Actions completing while draining, possibly on the draining
+   * thread itself, therefore do not recurse into draining.
+   */
+  void drain() {
+    lock.lock();
+
+    try {
+      if (draining) {
+        return;
+      }
+
+      draining = true;
+    } finally {
+      lock.unlock();
+    }
+
+    while (true) {
+      final List<DeferredAction<M>> batch;
+
+      lock.lock();
+
+      try {
+        batch = takeBatch();
+
+        if (batch.isEmpty()) {
+          draining = false;
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      release.accept(batch);
+    }
+  }
+
+  /**
+   * Take as many queued actions as the pacing allows, must be invoked under {@link #lock}.
+   *
+   * <p>Schedules a retry if actions are held back by the rate or by queued executor tasks.
+   *
+   * @return actions to release
+   */
+  private List<DeferredAction<M>> takeBatch() {
+    final List<DeferredAction<M>> batch = new ArrayList<>();
+    long retryNanos = -1;
+
+    refill();
+
+    while (!ready.isEmpty()) {
+      /* retried once an action completes */
+      if (pacing.maxInFlight() != ReleasePacing.UNBOUNDED
+          && inFlight.get() + batch.size() >= pacing.maxInFlight()) {
+        break;
+      }
+
+      if (pacing.maxQueuedTasks() != ReleasePacing.UNBOUNDED
+          && queuedTasks() >= pacing.maxQueuedTasks()) {
+        retryNanos = QUEUED_BACKOFF_NANOS;
+        break;
+      }
+
+      if (pacing.permitsPerSecond() != ReleasePacing.UNBOUNDED) {
+        if (tokens < 1) {
+          retryNanos = (long) Math.ceil((1 - tokens) * 1e9 / pacing.permitsPerSecond());
+          break;
+        }
+
+        tokens -= 1;
+      }
+
+      batch.add(ready.poll());
+    }
+
+    pending = !ready.isEmpty();
+
+    if (retryNanos >= 0 && !retryScheduled) {
+      retryScheduled = true;
+      scheduler.schedule(this::retry, retryNanos, TimeUnit.NANOSECONDS);
+    }
+
+    return batch;
+  }
+
+  private void retry() {
+    lock.lock();
+
+    try {
+      retryScheduled = false;
+    } finally {
+      lock.unlock();
+    }
+
+    drain();
+  }
+
+  /**
+   * Refill the token bucket, must be invoked under {@link #lock}.
+   */
+  private void refill() {
+    if (pacing.permitsPerSecond() == ReleasePacing.UNBOUNDED) {
+      return;
+    }
+
+    final long now = ticker.nanoTime();
+    final double refilled = (now - lastRefill) * pacing.permitsPerSecond() / 1e9;
+    tokens = Math.min(pacing.burst(), tokens + refilled);
+    lastRefill = now;
+  }
+
+  private int queuedTasks() {
+    if (executor instanceof ThreadPoolExecutor) {
+      return ((ThreadPoolExecutor) executor).getQueue().size();
+    }
+
+    if (executor instanceof ForkJoinPool) {
+      return ((ForkJoinPool) executor).getQueuedSubmissionCount();
+    }
+
+    return 0;
+  }
+}
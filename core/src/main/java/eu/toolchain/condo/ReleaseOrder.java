@@ -0,0 +1,177 @@
+package eu.toolchain.condo;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Describes the order in which {@link CoreCondo} releases deferred actions.
+ *
+ * <p>The order applies when removing a mask releases many actions at once, when pumps pick which
+ * deferred action to release, and when releasing actions in batches.
+ *
+ * <p>Deferred actions are kept in release order as they are deferred, so releasing an action costs
+ * the same no matter how many other actions are deferred.
+ *
+ * @param <M> type of metadata
+ */
+public abstract class ReleaseOrder<M> {
+  private static final ReleaseOrder<Object> FIFO = new ReleaseOrder<Object>() {
+    @Override
+    Comparator<DeferredAction<Object>> comparator() {
+      return null;
+    }
+  };
+
+  private ReleaseOrder() {
+  }
+
+  /**
+   * Comparator of actions in release order.
+   *
+   * <p>The comparator must be consistent with equals, and only compare fields which do not change
+   * while the action is deferred.
+   *
+   * @return a comparator, or {@code null} if actions are released in the order they were deferred
+   */
+  abstract Comparator<DeferredAction<M>> comparator();
+
+  /**
+   * Create a ranker for the actions of a single queue.
+   *
+   * @return a ranker, or {@code null} if the order does not rank actions
+   */
+  Ranker<M> newRanker() {
+    return null;
+  }
+
+  /**
+   * Release actions in the order they were deferred.
+   *
+   * <p>This is the default.
+   *
+   * @param <M> type of metadata
+   * @return a release order
+   */
+  @SuppressWarnings("unchecked")
+  public static <M> ReleaseOrder<M> fifo() {
+    return (ReleaseOrder<M>) (ReleaseOrder<?>) FIFO;
+  }
+
+  /**
+   * Release actions in priority order, where the action with the smallest metadata according to
+   * the given comparator is released first.
+   *
+   * <p>Actions with equal priority are released in the order they were deferred.
+   *
+   * @param comparator comparator of metadata
+   * @param <M> type of metadata
+   * @return a release order
+   */
+  public static <M> ReleaseOrder<M> priority(final Comparator<? super M> comparator) {
+    final Comparator<DeferredAction<M>> byPriority =
+        Comparator.<DeferredAction<M>, M>comparing(d -> d.metadata, comparator)
+            .thenComparingLong(d -> d.sequence);
+
+    return new ReleaseOrder<M>() {
+      @Override
+      Comparator<DeferredAction<M>> comparator() {
+        return byPriority;
+      }
+    };
+  }
+
+  /**
+   * Release actions from one lane per key in turn, where each lane releases its actions in the
+   * order they were deferred.
+   *
+   * <p>This prevents a key with many deferred actions from starving other keys.
+   *
+   * @param key function deriving the lane key of metadata
+   * @param <M> type of metadata
+   * @return a release order
+   */
+  public static <M> ReleaseOrder<M> perKey(final Function<? super M, ?> key) {
+    final Comparator<DeferredAction<M>> byRound =
+        Comparator.<DeferredAction<M>>comparingLong(d -> d.rank).thenComparingLong(d -> d.sequence);
+
+    return new ReleaseOrder<M>() {
+      @Override
+      Comparator<DeferredAction<M>> comparator() {
+        return byRound;
+      }
+
+      @Override
+      Ranker<M> newRanker() {
+        return new LaneRanker<>(key);
+      }
+    };
+  }
+
+  /**
+   * Assigns the rank of actions as they are added to a queue.
+   *
+   * @param <M> type of metadata
+   */
+  interface Ranker<M> {
+    /**
+     * Assign the rank of an action which is about to be added.
+     *
+     * @param action action being added
+     * @param first the action which is currently first in release order, or {@code null} if there
+     *     are no other actions
+     */
+    void add(DeferredAction<M> action, DeferredAction<M> first);
+
+    /**
+     * Forget an action which has been removed.
+     *
+     * @param action action which was removed
+     */
+    void remove(DeferredAction<M> action);
+  }
+
+  /**
+   * Ranks actions by the round that their lane releases them in.
+   *
+   * <p>The n:th action of a lane is released in the n:th round after the lane was created. Lanes
+   * created after some rounds have been released start in the current round, so that they do not
+   * get to catch up on the rounds they missed.
+   */
+  private static final class LaneRanker<M> implements Ranker<M> {
+    private final Function<? super M, ?> key;
+    private final Map<Object, Lane> lanes = new HashMap<>();
+
+    LaneRanker(final Function<? super M, ?> key) {
+      this.key = key;
+    }
+
+    @Override
+    public void add(final DeferredAction<M> action, final DeferredAction<M> first) {
+      final long round = first == null ? 0L : first.rank;
+      final Lane lane = lanes.computeIfAbsent(key.apply(action.metadata), k -> new Lane());
+      lane.last = lane.size == 0 ? round : Math.max(lane.last + 1, round);
+      lane.size++;
+      action.rank = lane.last;
+    }
+
+    @Override
+    public void remove(final DeferredAction<M> action) {
+      final Object k = key.apply(action.metadata);
+      final Lane lane = lanes.get(k);
+
+      if (lane != null && --lane.size == 0) {
+        lanes.remove(k);
+      }
+    }
+  }
+
+  private static final class Lane {
+    /**
+     * The round of the last action in the lane.
+     */
+    private long last;
+    private int size;
+  }
+}
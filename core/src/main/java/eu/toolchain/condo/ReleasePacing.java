@@ -0,0 +1,133 @@
+package eu.toolchain.condo;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Describes how {@link CoreCondo} paces the release of deferred actions when a mask is removed.
+ *
+ * <p>Without pacing, removing a mask releases every action it was blocking at once. With pacing,
+ * released actions are queued and handed to the executor gradually, limited by a token bucket
+ * rate, the number of actions in flight, and the number of tasks queued in the executor.
+ *
+ * <p>Pumps and batch releases are never paced. Actions queued for a paced release are run even if
+ * a mask matching them is added before they are released.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ReleasePacing {
+  static final int UNBOUNDED = -1;
+
+  private static final ReleasePacing UNPACED =
+      new ReleasePacing(UNBOUNDED, 0, UNBOUNDED, UNBOUNDED);
+
+  private final double permitsPerSecond;
+  private final int burst;
+  private final int maxInFlight;
+  private final int maxQueuedTasks;
+
+  double permitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  int burst() {
+    return burst;
+  }
+
+  int maxInFlight() {
+    return maxInFlight;
+  }
+
+  int maxQueuedTasks() {
+    return maxQueuedTasks;
+  }
+
+  boolean isPaced() {
+    return permitsPerSecond != UNBOUNDED || maxInFlight != UNBOUNDED
+        || maxQueuedTasks != UNBOUNDED;
+  }
+
+  /**
+   * Build new pacing that also limits the rate at which actions are released.
+   *
+   * @param permitsPerSecond number of actions to release per second
+   * @param burst number of actions that can be released at once after being idle
+   * @return new pacing
+   */
+  public ReleasePacing withRate(final double permitsPerSecond, final int burst) {
+    if (!(permitsPerSecond > 0)) {
+      throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+    }
+
+    if (burst < 1) {
+      throw new IllegalArgumentException("Burst must be positive: " + burst);
+    }
+
+    return new ReleasePacing(permitsPerSecond, burst, maxInFlight, maxQueuedTasks);
+  }
+
+  /**
+   * Build new pacing that also limits the number of actions in flight.
+   *
+   * <p>Every action counts while it is in flight, from when it is handed to the executor until it
+   * has been processed, not only the ones released by removing a mask.
+   *
+   * @param maxInFlight maximum number of actions in flight
+   * @return new pacing
+   */
+  public ReleasePacing withMaxInFlight(final int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("Max in flight must be positive: " + maxInFlight);
+    }
+
+    return new ReleasePacing(permitsPerSecond, burst, maxInFlight, maxQueuedTasks);
+  }
+
+  /**
+   * Build new pacing that also holds back actions while the executor has the given number of
+   * tasks queued.
+   *
+   * <p>Only the queues of a {@link java.util.concurrent.ThreadPoolExecutor} or a
+   * {@link java.util.concurrent.ForkJoinPool} can be inspected, other executors are never
+   * considered to have any queued tasks.
+   *
+   * @param maxQueuedTasks maximum number of queued tasks in the executor
+   * @return new pacing
+   */
+  public ReleasePacing withMaxQueuedTasks(final int maxQueuedTasks) {
+    if (maxQueuedTasks < 0) {
+      throw new IllegalArgumentException("Max queued tasks must not be negative: "
+          + maxQueuedTasks);
+    }
+
+    return new ReleasePacing(permitsPerSecond, burst, maxInFlight, maxQueuedTasks);
+  }
+
+  /**
+   * Release every action at once, this is the default.
+   *
+   * @return pacing that does not pace
+   */
+  public static ReleasePacing unpaced() {
+    return UNPACED;
+  }
+
+  /**
+   * Release actions at the given rate, one at a time.
+   *
+   * @param permitsPerSecond number of actions to release per second
+   * @return rate limited pacing
+   */
+  public static ReleasePacing rate(final double permitsPerSecond) {
+    return UNPACED.withRate(permitsPerSecond, 1);
+  }
+
+  /**
+   * Only release actions while fewer than the given number of actions are in flight.
+   *
+   * @param maxInFlight maximum number of actions in flight
+   * @return pacing limited by actions in flight
+   */
+  public static ReleasePacing maxInFlight(final int maxInFlight) {
+    return UNPACED.withMaxInFlight(maxInFlight);
+  }
+}
@@ -0,0 +1,123 @@
+package eu.toolchain.condo;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how much history of processed actions is retained by {@link CoreCondo}.
+ *
+ * <p>Waits are answered from the retained history, and otherwise wait for actions that are
+ * processed later. Entries that a wait might have needed could have been evicted, in which case
+ * the wait might wait forever. Use {@link #withFailOnEviction()} to fail such waits with a
+ * {@link HistoryEvictedException} instead.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Retention {
+  static final int UNBOUNDED = -1;
+
+  private static final Retention UNBOUNDED_RETENTION =
+      new Retention(UNBOUNDED, UNBOUNDED, false);
+  private static final Retention NONE = new Retention(0, UNBOUNDED, false);
+
+  private final int maxEntries;
+  private final long maxAgeNanos;
+  private final boolean failOnEviction;
+
+  int maxEntries() {
+    return maxEntries;
+  }
+
+  long maxAgeNanos() {
+    return maxAgeNanos;
+  }
+
+  boolean failOnEviction() {
+    return failOnEviction;
+  }
+
+  /**
+   * Build a new retention that also limits the number of retained entries.
+   *
+   * @param maxEntries maximum number of retained entries
+   * @return a new retention
+   */
+  public Retention withMaxEntries(final int maxEntries) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("Max entries must not be negative: " + maxEntries);
+    }
+
+    return new Retention(maxEntries, maxAgeNanos, failOnEviction);
+  }
+
+  /**
+   * Build a new retention that also limits the age of retained entries.
+   *
+   * @param maxAge maximum age of retained entries
+   * @param unit unit of the max age
+   * @return a new retention
+   */
+  public Retention withMaxAge(final long maxAge, final TimeUnit unit) {
+    if (maxAge < 0) {
+      throw new IllegalArgumentException("Max age must not be negative: " + maxAge);
+    }
+
+    return new Retention(maxEntries, unit.toNanos(maxAge), failOnEviction);
+  }
+
+  /**
+   * Build a new retention that fails waits which are not matched by any retained entry, if any
+   * entry that they might have matched has been evicted.
+   *
+   * <p>Since it is not known what the evicted entries were, this also fails waits for actions
+   * which have not been processed yet. It is intended for tests which expect to wait for actions
+   * that have already been processed.
+   *
+   * @return a new retention
+   */
+  public Retention withFailOnEviction() {
+    return new Retention(maxEntries, maxAgeNanos, true);
+  }
+
+  /**
+   * Retain all history, this is the default.
+   *
+   * @return an unbounded retention
+   */
+  public static Retention unbounded() {
+    return UNBOUNDED_RETENTION;
+  }
+
+  /**
+   * Retain no history.
+   *
+   * <p>Only waits that were already waiting when an action was processed can be satisfied by it.
+   *
+   * @return a retention that retains nothing
+   */
+  public static Retention none() {
+    return NONE;
+  }
+
+  /**
+   * Retain at most the given number of entries, evicting the oldest.
+   *
+   * @param maxEntries maximum number of retained entries
+   * @return a bounded retention
+   */
+  public static Retention maxEntries(final int maxEntries) {
+    return UNBOUNDED_RETENTION.withMaxEntries(maxEntries);
+  }
+
+  /**
+   * Retain entries for at most the given age.
+   *
+   * @param maxAge maximum age of retained entries
+   * @param unit unit of the max age
+   * @return a bounded retention
+   */
+  public static Retention maxAge(final long maxAge, final TimeUnit unit) {
+    return UNBOUNDED_RETENTION.withMaxAge(maxAge, unit);
+  }
+}
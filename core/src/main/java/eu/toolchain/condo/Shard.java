@@ -0,0 +1,45 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A stripe of the coordination state of a {@link CoreCondo}.
+ *
+ * <p>Every action is assigned to a single shard, which holds it while it is deferred and records it
+ * once it has been processed. Actions assigned to different shards never contend on the same lock.
+ *
+ * @param <M> type of metadata
+ */
+final class Shard<M> {
+  /**
+   * Lock guarding {@link #deferred} and {@link #pumps}.
+   */
+  final Lock maskLock = new ReentrantLock();
+  /**
+   * Lock guarding {@link #history} and {@link #waiters}.
+   */
+  final Lock processedLock = new ReentrantLock();
+  /**
+   * Signalled when room might have been made in {@link #deferred}, guarded by {@link #maskLock}.
+   */
+  final Condition notFull = maskLock.newCondition();
+
+  final DeferredQueue<M> deferred;
+  /**
+   * Pumps matched against every masked action.
+   */
+  final WaiterSet<M> pumps = new WaiterSet<>();
+
+  final History<M> history;
+  /**
+   * Waiters matched against every processed action.
+   */
+  final WaiterSet<M> waiters = new WaiterSet<>();
+
+  Shard(final Retention retention, final ReleaseOrder<M> releaseOrder) {
+    this.deferred = new DeferredQueue<>(releaseOrder);
+    this.history = new History<>(retention);
+  }
+}
@@ -0,0 +1,24 @@
+package eu.toolchain.condo;
+
+/**
+ * A source of monotonic time.
+ */
+public interface Ticker {
+  /**
+   * Get the current time of this ticker in nanoseconds.
+   *
+   * <p>The returned value only has meaning when compared to other values from the same ticker.
+   *
+   * @return current time in nanoseconds
+   */
+  long nanoTime();
+
+  /**
+   * Ticker based on {@link System#nanoTime()}.
+   *
+   * @return a system ticker
+   */
+  static Ticker system() {
+    return System::nanoTime;
+  }
+}
@@ -0,0 +1,212 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hashed timer wheel of values which expire at a deadline.
+ *
+ * <p>Time is divided into ticks, and every value is added to the bucket of the tick that it expires
+ * in. Adding and removing a value is constant time, and expiring values only visits the buckets of
+ * the ticks that have passed. Values are never expired early, but might be expired up to one tick
+ * late.
+ *
+ * @param <T> type of values
+ */
+final class TimerWheel<T> {
+  private final long tickNanos;
+  /**
+   * Sentinels of the circular lists of entries in every bucket.
+   */
+  private final Timeout<T>[] buckets;
+  private final int mask;
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * The next tick to expire, guarded by {@link #lock}.
+   */
+  private long nextTick;
+  /**
+   * Number of values in the wheel, guarded by {@link #lock}.
+   */
+  private int size = 0;
+
+  /**
+   * Create a new timer wheel.
+   *
+   * @param tickNanos duration of a tick in nanoseconds
+   * @param buckets number of buckets, must be a power of two
+   * @param now current time in nanoseconds
+   */
+  @SuppressWarnings("unchecked")
+  TimerWheel(final long tickNanos, final int buckets, final long now) {
+    if (tickNanos < 1) {
+      throw new IllegalArgumentException("Tick must be positive: " + tickNanos);
+    }
+
+    if (Integer.bitCount(buckets) != 1) {
+      throw new IllegalArgumentException("Buckets must be a power of two: " + buckets);
+    }
+
+    this.tickNanos = tickNanos;
+    this.buckets = new Timeout[buckets];
+    this.mask = buckets - 1;
+    this.nextTick = Math.floorDiv(now, tickNanos) + 1;
+
+    for (int i = 0; i < buckets; i++) {
+      final Timeout<T> sentinel = new Timeout<>(this, null, 0L);
+      sentinel.prev = sentinel;
+      sentinel.next = sentinel;
+      this.buckets[i] = sentinel;
+    }
+  }
+
+  long tickNanos() {
+    return tickNanos;
+  }
+
+  /**
+   * Add a value which expires at the given deadline.
+   *
+   * @param value value to add
+   * @param deadline time in nanoseconds that the value expires at
+   * @return a handle which removes the value from the wheel when cancelled
+   */
+  Timeout<T> add(final T value, final long deadline) {
+    /* round up, so that values never expire early */
+    final long tick = -Math.floorDiv(-deadline, tickNanos);
+
+    lock.lock();
+
+    try {
+      final long expiresAt = Math.max(tick, nextTick);
+      final Timeout<T> timeout = new Timeout<>(this, value, expiresAt);
+      final Timeout<T> sentinel = buckets[(int) (expiresAt & mask)];
+
+      timeout.prev = sentinel.prev;
+      timeout.next = sentinel;
+      sentinel.prev.next = timeout;
+      sentinel.prev = timeout;
+      size++;
+      return timeout;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove and return every value which has expired at the given time.
+   *
+   * @param now current time in nanoseconds
+   * @return expired values, in no particular order
+   */
+  List<T> expire(final long now) {
+    final long target = Math.floorDiv(now, tickNanos);
+
+    lock.lock();
+
+    try {
+      if (target < nextTick || size == 0) {
+        nextTick = Math.max(nextTick, target + 1);
+        return Collections.emptyList();
+      }
+
+      final List<T> expired = new ArrayList<>();
+      /* every bucket is visited at most once, however many ticks have passed */
+      final long last = Math.min(target, nextTick + mask);
+
+      for (long tick = nextTick; tick <= last; tick++) {
+        final Timeout<T> sentinel = buckets[(int) (tick & mask)];
+        Timeout<T> timeout = sentinel.next;
+
+        while (timeout != sentinel) {
+          final Timeout<T> next = timeout.next;
+
+          if (timeout.tick <= target) {
+            expired.add(timeout.value);
+            unlink(timeout);
+          }
+
+          timeout = next;
+        }
+      }
+
+      nextTick = target + 1;
+      return expired;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Check if the wheel is empty.
+   *
+   * @return {@code true} if there are no values in the wheel
+   */
+  boolean isEmpty() {
+    lock.lock();
+
+    try {
+      return size == 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Must be invoked under {@link #lock}.
+   */
+  private void unlink(final Timeout<T> timeout) {
+    if (timeout.next == null) {
+      return;
+    }
+
+    timeout.prev.next = timeout.next;
+    timeout.next.prev = timeout.prev;
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.value = null;
+    size--;
+  }
+
+  /**
+   * A value in the wheel.
+   */
+  static final class Timeout<T> {
+    private final TimerWheel<T> wheel;
+    /**
+     * The tick that the value expires in.
+     */
+    private final long tick;
+
+    /**
+     * The value, cleared once it is no longer in the wheel. Guarded by the lock of the wheel, like
+     * the links.
+     */
+    private T value;
+    private Timeout<T> prev;
+    private Timeout<T> next;
+
+    private Timeout(final TimerWheel<T> wheel, final T value, final long tick) {
+      this.wheel = wheel;
+      this.value = value;
+      this.tick = tick;
+    }
+
+    /**
+     * Remove the value from the wheel, unless it has already expired.
+     */
+    void cancel() {
+      wheel.lock.lock();
+
+      try {
+        wheel.unlink(this);
+      } finally {
+        wheel.lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Access to virtual threads, which are only available on Java 21 or later.
+ *
+ * <p>This variant is used on older runtimes. The multi-release jar replaces it with a variant that
+ * uses virtual threads on Java 21 or later.
+ */
+final class VirtualThreads {
+  private VirtualThreads() {
+  }
+
+  /**
+   * Build an executor that runs every task on a new virtual thread.
+   *
+   * @return an executor backed by virtual threads
+   * @throws UnsupportedOperationException if virtual threads are not supported by the runtime
+   */
+  static Executor executor() {
+    throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+  }
+}
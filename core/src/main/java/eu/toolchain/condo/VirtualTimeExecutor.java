@@ -0,0 +1,386 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An executor and scheduler running in virtual time, which is also the ticker of that time.
+ *
+ * <p>Nothing runs on its own. Tasks are queued, and only run on the thread which calls
+ * {@link #runPending()}, {@link #advance(long, TimeUnit)} or {@link #runUntilIdle()}. Time only
+ * moves forward when it is advanced, or when the executor is run until it is idle. This makes tests
+ * which depend on delays or timeouts run instantly and deterministically.
+ *
+ * <p>Tasks are run in the order they are due, and tasks that are due at the same time in the order
+ * they were submitted. Tasks may be submitted from any thread.
+ *
+ * <p>Since tasks only run when driven, blocking on anything which depends on them from the driving
+ * thread will block forever. Prefer the asynchronous variants of waits and pumps, or drive the
+ * executor before blocking.
+ *
+ * @see CoreCondo.Builder#virtualTime(VirtualTimeExecutor)
+ */
+public final class VirtualTimeExecutor extends AbstractExecutorService
+    implements ScheduledExecutorService, Ticker {
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * Queued tasks, guarded by {@link #lock}.
+   */
+  private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+  /**
+   * Current virtual time, only modified under {@link #lock}.
+   */
+  private volatile long now = 0L;
+  /**
+   * Sequence of the next submitted task, guarded by {@link #lock}.
+   */
+  private long nextSequence = 0L;
+  /**
+   * Number of queued tasks which are not periodic, guarded by {@link #lock}.
+   */
+  private int oneShot = 0;
+  private volatile boolean shutdown = false;
+
+  @Override
+  public long nanoTime() {
+    return now;
+  }
+
+  /**
+   * Run every task that is due, including tasks that become due while running, without advancing
+   * time.
+   *
+   * @return the number of tasks that were run
+   */
+  public int runPending() {
+    return runUntil(now);
+  }
+
+  /**
+   * Advance time by the given duration, running every task that becomes due in the order they are
+   * due.
+   *
+   * <p>While a task runs, the current time is the time that it was due.
+   *
+   * @param duration duration to advance by
+   * @param unit unit of the duration
+   * @return the number of tasks that were run
+   */
+  public int advance(final long duration, final TimeUnit unit) {
+    if (duration < 0) {
+      throw new IllegalArgumentException("Duration must not be negative: " + duration);
+    }
+
+    final long target = now + unit.toNanos(duration);
+    final int count = runUntil(target);
+
+    lock.lock();
+
+    try {
+      now = target;
+    } finally {
+      lock.unlock();
+    }
+
+    return count;
+  }
+
+  /**
+   * Run tasks, advancing time to when the next task is due whenever nothing is pending, until only
+   * periodic tasks are queued.
+   *
+   * @return the number of tasks that were run
+   */
+  public int runUntilIdle() {
+    int count = 0;
+
+    while (true) {
+      count += runPending();
+
+      final long next;
+
+      lock.lock();
+
+      try {
+        if (oneShot == 0) {
+          return count;
+        }
+
+        next = queue.peek().time;
+      } finally {
+        lock.unlock();
+      }
+
+      count += runUntil(next);
+    }
+  }
+
+  /**
+   * The number of queued tasks, including tasks which are not due yet.
+   *
+   * @return the number of queued tasks
+   */
+  public int queued() {
+    lock.lock();
+
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    enqueue(new Task<>(Executors.callable(command, null), now, 0L));
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(
+      final Runnable command, final long delay, final TimeUnit unit
+  ) {
+    return enqueue(new Task<>(Executors.callable(command, null), due(delay, unit), 0L));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(
+      final Callable<V> callable, final long delay, final TimeUnit unit
+  ) {
+    return enqueue(new Task<>(callable, due(delay, unit), 0L));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(
+      final Runnable command, final long initialDelay, final long period, final TimeUnit unit
+  ) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Period must be positive: " + period);
+    }
+
+    return enqueue(new Task<>(command, due(initialDelay, unit), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(
+      final Runnable command, final long initialDelay, final long delay, final TimeUnit unit
+  ) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException("Delay must be positive: " + delay);
+    }
+
+    return enqueue(new Task<>(command, due(initialDelay, unit), -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown = true;
+
+    lock.lock();
+
+    try {
+      final List<Runnable> remaining = new ArrayList<>(queue);
+      queue.clear();
+      oneShot = 0;
+      return remaining;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && queued() == 0;
+  }
+
+  /**
+   * Tasks only run when driven, so this does not wait.
+   *
+   * @return {@code true} if the executor is terminated
+   */
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+    return isTerminated();
+  }
+
+  private long due(final long delay, final TimeUnit unit) {
+    return now + Math.max(0L, unit.toNanos(delay));
+  }
+
+  private <V> Task<V> enqueue(final Task<V> task) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Executor has been shut down");
+    }
+
+    lock.lock();
+
+    try {
+      task.sequence = nextSequence++;
+      queue.add(task);
+
+      if (!task.isPeriodic()) {
+        oneShot++;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return task;
+  }
+
+  /**
+   * Run every task that is due at or before the given time, in the order they are due.
+   *
+   * @param target time to run until
+   * @return the number of tasks that were run
+   */
+  private int runUntil(final long target) {
+    int count = 0;
+
+    while (true) {
+      final Task<?> task;
+
+      lock.lock();
+
+      try {
+        final Task<?> next = queue.peek();
+
+        if (next == null || next.time > target) {
+          return count;
+        }
+
+        queue.poll();
+
+        if (!next.isPeriodic()) {
+          oneShot--;
+        }
+
+        now = Math.max(now, next.time);
+        task = next;
+      } finally {
+        lock.unlock();
+      }
+
+      task.run();
+      count++;
+    }
+  }
+
+  private boolean remove(final Task<?> task) {
+    lock.lock();
+
+    try {
+      final boolean removed = queue.remove(task);
+
+      if (removed && !task.isPeriodic()) {
+        oneShot--;
+      }
+
+      return removed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * A queued task.
+   */
+  private class Task<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+    /**
+     * Positive for a fixed rate, negative for a fixed delay, and zero if not periodic.
+     */
+    private final long period;
+
+    private long time;
+    private long sequence;
+
+    Task(final Callable<V> callable, final long time, final long period) {
+      super(callable);
+      this.time = time;
+      this.period = period;
+    }
+
+    Task(final Runnable runnable, final long time, final long period) {
+      super(runnable, null);
+      this.time = time;
+      this.period = period;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+      return period != 0L;
+    }
+
+    @Override
+    public long getDelay(final TimeUnit unit) {
+      return unit.convert(time - now, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(final Delayed other) {
+      if (other == this) {
+        return 0;
+      }
+
+      if (other instanceof Task) {
+        final Task<?> task = (Task<?>) other;
+        final int c = Long.compare(time, task.time);
+        return c != 0 ? c : Long.compare(sequence, task.sequence);
+      }
+
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      final boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+      if (cancelled) {
+        remove(this);
+      }
+
+      return cancelled;
+    }
+
+    @Override
+    public void run() {
+      if (!isPeriodic()) {
+        super.run();
+        return;
+      }
+
+      if (!runAndReset()) {
+        return;
+      }
+
+      time = period > 0 ? time + period : now - period;
+
+      if (!shutdown) {
+        enqueue(this);
+      }
+    }
+  }
+}
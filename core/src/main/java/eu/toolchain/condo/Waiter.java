@@ -0,0 +1,202 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A registered wait for processed, or pumped actions.
+ *
+ * <p>Waiters are offered metadata one at a time, and their future is completed once all of their
+ * predicates have been matched.
+ *
+ * <p>A waiter might be registered in more than one shard, so offering metadata is guarded by a lock
+ * owned by the waiter itself.
+ *
+ * @param <M> type of metadata
+ */
+final class Waiter<M> {
+  private final boolean once;
+  private final List<Predicate<M>> remaining;
+  private final Class<?> type;
+  private final Object key;
+  private final Object value;
+  private final CompletableFuture<Void> future = new CompletableFuture<>();
+  private final Lock lock = new ReentrantLock();
+
+  Waiter(final boolean once, final Collection<? extends Predicate<M>> predicates) {
+    this.once = once;
+    this.remaining = new ArrayList<>(predicates);
+    this.type = commonType(remaining);
+    this.key = commonKey(remaining);
+    this.value = commonValue(remaining);
+  }
+
+  /**
+   * If this waiter consumes the metadata that it matches.
+   */
+  boolean isOnce() {
+    return once;
+  }
+
+  /**
+   * The only type of metadata that this waiter can match, or {@code null} if it can match metadata
+   * of any type.
+   */
+  Class<?> type() {
+    return type;
+  }
+
+  /**
+   * The only shard key of metadata that this waiter can match, or {@code null} if it can match
+   * metadata with any key.
+   */
+  Object key() {
+    return key;
+  }
+
+  /**
+   * The only metadata that this waiter can match, compared using equality, or {@code null} if it
+   * can match metadata which is not equal to a single value.
+   */
+  Object value() {
+    return value;
+  }
+
+  boolean isSatisfied() {
+    lock.lock();
+
+    try {
+      return remaining.isEmpty();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * If this waiter has been completed for any reason, like being timed out or cancelled.
+   */
+  boolean isDone() {
+    return future.isDone();
+  }
+
+  CompletableFuture<Void> future() {
+    return future;
+  }
+
+  /**
+   * Offer the given metadata to this waiter.
+   *
+   * @param metadata metadata to offer
+   * @return {@code true} if the metadata was matched by one of the remaining predicates
+   */
+  boolean offer(final M metadata) {
+    lock.lock();
+
+    try {
+      final Iterator<Predicate<M>> it = remaining.iterator();
+
+      while (it.hasNext()) {
+        if (!it.next().test(metadata)) {
+          continue;
+        }
+
+        if (once) {
+          it.remove();
+        } else {
+          remaining.clear();
+        }
+
+        return true;
+      }
+
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void signal() {
+    future.complete(null);
+  }
+
+  private static <M> Class<?> commonType(final List<Predicate<M>> predicates) {
+    Class<?> type = null;
+
+    for (final Predicate<M> predicate : predicates) {
+      final Class<?> next;
+
+      if (predicate instanceof TypedPredicate) {
+        next = ((TypedPredicate<M>) predicate).type();
+      } else if (predicate instanceof ExactPredicate) {
+        next = ((ExactPredicate<M>) predicate).value().getClass();
+      } else {
+        return null;
+      }
+
+      if (type != null && type != next) {
+        return null;
+      }
+
+      type = next;
+    }
+
+    return type;
+  }
+
+  private static <M> Object commonKey(final List<Predicate<M>> predicates) {
+    Object key = null;
+
+    for (final Predicate<M> predicate : predicates) {
+      if (!(predicate instanceof KeyedPredicate)) {
+        return null;
+      }
+
+      final Object next = ((KeyedPredicate<M>) predicate).key();
+
+      if (key != null && !key.equals(next)) {
+        return null;
+      }
+
+      key = next;
+    }
+
+    return key;
+  }
+
+  private static <M> Object commonValue(final List<Predicate<M>> predicates) {
+    Object value = null;
+
+    for (final Predicate<M> predicate : predicates) {
+      if (!(predicate instanceof ExactPredicate)) {
+        return null;
+      }
+
+      final Object next = ((ExactPredicate<M>) predicate).value();
+
+      if (value != null && !value.equals(next)) {
+        return null;
+      }
+
+      value = next;
+    }
+
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    lock.lock();
+
+    try {
+      return "Waiter(once=" + once + ", remaining=" + remaining + ")";
+    } finally {
+      lock.unlock();
+    }
+  }
+}
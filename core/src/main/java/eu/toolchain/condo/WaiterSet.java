@@ -0,0 +1,178 @@
+package eu.toolchain.condo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of registered waiters, which are offered metadata in registration order.
+ *
+ * <p>Waiters which can only match one type of metadata are partitioned by that type, and are only
+ * offered metadata of that type. Waiters which can only match metadata equal to a single value are
+ * indexed by that value, and are only offered metadata equal to it.
+ *
+ * <p>Not thread-safe, all access must be guarded externally.
+ *
+ * @param <M> type of metadata
+ */
+final class WaiterSet<M> {
+  private final Set<Waiter<M>> untyped = new LinkedHashSet<>();
+  private final Map<Class<?>, Set<Waiter<M>>> typed = new HashMap<>();
+  private final Map<Object, Set<Waiter<M>>> exact = new HashMap<>();
+
+  /**
+   * Waiters that have been satisfied since the last call to {@link #drainSatisfied()}.
+   */
+  private List<Waiter<M>> satisfied = null;
+
+  void add(final Waiter<M> waiter) {
+    final Object value = waiter.value();
+
+    if (value != null) {
+      exact.computeIfAbsent(value, v -> new LinkedHashSet<>()).add(waiter);
+      return;
+    }
+
+    final Class<?> type = waiter.type();
+
+    if (type == null) {
+      untyped.add(waiter);
+      return;
+    }
+
+    typed.computeIfAbsent(type, t -> new LinkedHashSet<>()).add(waiter);
+  }
+
+  void remove(final Waiter<M> waiter) {
+    final Object value = waiter.value();
+
+    if (value != null) {
+      remove(exact, value, waiter);
+      return;
+    }
+
+    final Class<?> type = waiter.type();
+
+    if (type == null) {
+      untyped.remove(waiter);
+      return;
+    }
+
+    remove(typed, type, waiter);
+  }
+
+  boolean isEmpty() {
+    return untyped.isEmpty() && typed.isEmpty() && exact.isEmpty();
+  }
+
+  /**
+   * Offer the given metadata to the registered waiters.
+   *
+   * <p>Metadata is offered to every waiter, but can only be consumed by the first waiter that
+   * waits once. Waiters registered for the value of the metadata are offered it first, followed by
+   * waiters registered for the type of the metadata. Satisfied
+   * waiters are removed, and must be signalled by the caller through {@link #drainSatisfied()}
+   * after any locks have been released.
+   *
+   * @param metadata metadata to offer
+   * @return {@code true} if the metadata was consumed by a waiter
+   */
+  boolean offer(final M metadata) {
+    boolean consumed = false;
+
+    if (!exact.isEmpty() && metadata != null) {
+      consumed = offer(exact, metadata, metadata, consumed);
+    }
+
+    if (!typed.isEmpty() && metadata != null) {
+      consumed = offer(typed, metadata.getClass(), metadata, consumed);
+    }
+
+    return offer(untyped, metadata, consumed);
+  }
+
+  /**
+   * Take all waiters that have been satisfied.
+   *
+   * @return satisfied waiters
+   */
+  List<Waiter<M>> drainSatisfied() {
+    final List<Waiter<M>> satisfied = this.satisfied;
+
+    if (satisfied == null) {
+      return Collections.emptyList();
+    }
+
+    this.satisfied = null;
+    return satisfied;
+  }
+
+  private <K> boolean offer(
+      final Map<K, Set<Waiter<M>>> index, final K key, final M metadata, final boolean consumed
+  ) {
+    final Set<Waiter<M>> waiters = index.get(key);
+
+    if (waiters == null) {
+      return consumed;
+    }
+
+    final boolean next = offer(waiters, metadata, consumed);
+
+    if (waiters.isEmpty()) {
+      index.remove(key);
+    }
+
+    return next;
+  }
+
+  private static <K, M> void remove(
+      final Map<K, Set<Waiter<M>>> index, final K key, final Waiter<M> waiter
+  ) {
+    final Set<Waiter<M>> waiters = index.get(key);
+
+    if (waiters != null && waiters.remove(waiter) && waiters.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  private boolean offer(final Set<Waiter<M>> waiters, final M metadata, boolean consumed) {
+    final Iterator<Waiter<M>> it = waiters.iterator();
+
+    while (it.hasNext()) {
+      final Waiter<M> waiter = it.next();
+
+      /* timed out or cancelled */
+      if (waiter.isDone()) {
+        it.remove();
+        continue;
+      }
+
+      if (consumed && waiter.isOnce()) {
+        continue;
+      }
+
+      if (!waiter.offer(metadata)) {
+        continue;
+      }
+
+      consumed |= waiter.isOnce();
+
+      if (waiter.isSatisfied()) {
+        it.remove();
+
+        if (satisfied == null) {
+          satisfied = new ArrayList<>();
+        }
+
+        satisfied.add(waiter);
+      }
+    }
+
+    return consumed;
+  }
+}
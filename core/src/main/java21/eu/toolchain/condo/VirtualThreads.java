@@ -0,0 +1,26 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, which are only available on Java 21 or later.
+ *
+ * <p>This variant is packaged in the multi-release jar, and used on Java 21 or later.
+ */
+final class VirtualThreads {
+  private static final ThreadFactory FACTORY =
+      Thread.ofVirtual().name("condo-virtual-", 0).factory();
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Build an executor that runs every task on a new virtual thread.
+   *
+   * @return an executor backed by virtual threads
+   */
+  static Executor executor() {
+    return task -> FACTORY.newThread(task).start();
+  }
+}
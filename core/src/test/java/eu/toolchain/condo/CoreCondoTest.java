@@ -1,8 +1,24 @@
 package eu.toolchain.condo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
@@ -11,6 +27,7 @@ import org.mockito.Mockito;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.fail;
 
 public class CoreCondoTest {
   @Rule
@@ -57,6 +74,73 @@ public class CoreCondoTest {
     assertThat(future.isDone(), is(true));
   }
 
+  @Test
+  public void testNonMatchingMask() throws InterruptedException {
+    final Condo<Meta> condo = CoreCondo.buildDefault();
+    final Meta m = Mockito.mock(Meta.class);
+
+    condo.mask(match -> match != m);
+
+    final CompletableFuture<Void> future = condo.schedule(m, () -> null);
+
+    condo.waitOnce(match -> match == m);
+    assertThat(future.isDone(), is(true));
+  }
+
+  @Test
+  public void testUnmaskOnlyRevisitsBlockedActions() throws InterruptedException {
+    final Condo<String> condo = CoreCondo.<String>builder().executor(Runnable::run).build();
+
+    final AtomicInteger tested = new AtomicInteger();
+
+    final Predicate<String> maskA = metadata -> {
+      tested.incrementAndGet();
+      return "a".equals(metadata);
+    };
+
+    final Predicate<String> maskB = "b"::equals;
+
+    condo.mask(maskA).mask(maskB);
+
+    final CompletableFuture<Void> a = condo.schedule("a", () -> null);
+    final CompletableFuture<Void> b = condo.schedule("b", () -> null);
+    assertThat(tested.get(), is(4));
+
+    /* only the action blocked by b is tested against the remaining masks */
+    condo.unmask(maskB);
+    assertThat(b.isDone(), is(true));
+    assertThat(a.isDone(), is(false));
+    assertThat(tested.get(), is(5));
+
+    condo.unmask(maskA);
+    assertThat(a.isDone(), is(true));
+    assertThat(tested.get(), is(5));
+  }
+
+  @Test
+  public void testUnmaskRunsActionsOutsideLocks() throws Exception {
+    final Condo<String> condo = CoreCondo.<String>builder().executor(Runnable::run).build();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    /* asynchronous actions are started on the thread that unmasks */
+    final CompletableFuture<Boolean> masked = condo.scheduleAsync("action", () -> {
+      final CompletableFuture<Condo<String>> other =
+          CompletableFuture.supplyAsync(() -> condo.mask("other"::equals));
+
+      try {
+        other.get(100, TimeUnit.MILLISECONDS);
+        return CompletableFuture.completedFuture(true);
+      } catch (final Exception e) {
+        return CompletableFuture.completedFuture(false);
+      }
+    });
+
+    condo.unmask(mask);
+    assertThat(masked.get(), is(true));
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testIllegalUnmask() {
     CoreCondo.buildDefault().unmask(match -> true);
@@ -64,7 +148,8 @@ public class CoreCondoTest {
 
   @Test(timeout = 1000L)
   public void testPump() throws InterruptedException {
-    final Condo<Meta> condo = CoreCondo.buildDefault();
+    final VirtualTimeExecutor executor = new VirtualTimeExecutor();
+    final Condo<Meta> condo = CoreCondo.<Meta>builder().virtualTime(executor).build();
 
     final Meta m1 = Mockito.mock(Meta.class);
     final Meta m2 = Mockito.mock(Meta.class);
@@ -75,21 +160,1137 @@ public class CoreCondoTest {
     final CompletableFuture<Void> f1 = condo.schedule(m1, () -> null);
     final CompletableFuture<Void> f2 = condo.schedule(m2, () -> null);
 
-    ForkJoinPool.commonPool().execute(() -> {
+    executor.schedule(() -> condo.pumpAsync(predicate), 100, TimeUnit.MILLISECONDS);
+
+    final CompletableFuture<Void> waited = condo
+        .waitOnceAsync(match -> match == m2)
+        .thenCompose(v -> condo.waitOnceAsync(predicate));
+
+    executor.runPending();
+
+    assertThat(f1.isDone(), is(false));
+    assertThat(f2.isDone(), is(true));
+    assertThat(waited.isDone(), is(false));
+
+    /* the pump alone releases the masked action */
+    executor.advance(100, TimeUnit.MILLISECONDS);
+
+    assertThat(f1.isDone(), is(true));
+    assertThat(waited.isDone(), is(true));
+
+    condo.unmask(predicate);
+  }
+
+  @Test
+  public void testVirtualTime() throws Exception {
+    final VirtualTimeExecutor executor = new VirtualTimeExecutor();
+    final Condo<String> condo = CoreCondo.<String>builder().virtualTime(executor).build();
+
+    final CompletableFuture<Void> timeout =
+        condo.waitOnceAsync("never"::equals, 1, TimeUnit.HOURS);
+    final CompletableFuture<Void> waited =
+        condo.waitOnceAsync("action"::equals, 2, TimeUnit.HOURS);
+    final List<Long> ticks = new ArrayList<>();
+
+    executor.scheduleAtFixedRate(() -> ticks.add(executor.nanoTime()), 0, 1, TimeUnit.HOURS);
+    executor.schedule(() -> condo.schedule("action", () -> null), 30, TimeUnit.MINUTES);
+
+    executor.advance(10, TimeUnit.MINUTES);
+    assertThat(waited.isDone(), is(false));
+
+    executor.runUntilIdle();
+
+    assertThat(waited.isDone(), is(true));
+    assertThat(timeout.isCompletedExceptionally(), is(true));
+    assertThat(executor.nanoTime(), is(TimeUnit.HOURS.toNanos(1)));
+    assertThat(ticks, is(Arrays.asList(0L, TimeUnit.HOURS.toNanos(1))));
+  }
+
+  @Test
+  public void testBatchPump() {
+    final AtomicInteger batches = new AtomicInteger();
+
+    final Condo<String> condo = CoreCondo.<String>builder().executor(runnable -> {
+      batches.incrementAndGet();
+      runnable.run();
+    }).executionMode(ExecutionMode.SINGLE_HOP).build();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    final List<String> order = new ArrayList<>();
+
+    for (final String metadata : Arrays.asList("a1", "b1", "a2", "a3", "b2")) {
+      condo.schedule(metadata, () -> order.add(metadata));
+    }
+
+    /* synchronous actions are handed off one by one */
+    assertThat(condo.pump(metadata -> metadata.startsWith("a"), 2), is(2));
+    assertThat(order, is(Arrays.asList("a1", "a2")));
+    assertThat(batches.get(), is(2));
+
+    assertThat(condo.pumpAll(metadata -> metadata.startsWith("b")), is(2));
+    assertThat(order, is(Arrays.asList("a1", "a2", "b1", "b2")));
+    assertThat(batches.get(), is(4));
+
+    assertThat(condo.drain(), is(1));
+    assertThat(condo.drain(), is(0));
+    assertThat(order, is(Arrays.asList("a1", "a2", "b1", "b2", "a3")));
+    assertThat(batches.get(), is(5));
+
+    /* asynchronous actions only start work, and are run as a single task */
+    for (final String metadata : Arrays.asList("c1", "c2", "c3")) {
+      condo.scheduleAsync(metadata, () -> {
+        order.add(metadata);
+        return CompletableFuture.completedFuture(null);
+      });
+    }
+
+    assertThat(condo.drain(), is(3));
+    assertThat(order, is(Arrays.asList("a1", "a2", "b1", "b2", "a3", "c1", "c2", "c3")));
+    assertThat(batches.get(), is(6));
+  }
+
+  @Test
+  public void testPumpRunsInParallel() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      final Condo<Integer> condo = CoreCondo
+          .<Integer>builder()
+          .executor(executor)
+          .executionMode(ExecutionMode.SINGLE_HOP)
+          .build();
+
+      final Predicate<Integer> mask = metadata -> true;
+      condo.mask(mask);
+
+      /* every action waits for all of the others to start, so they have to run in parallel */
+      final CountDownLatch started = new CountDownLatch(4);
+      final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+
+      for (int i = 0; i < 4; i++) {
+        futures.add(condo.schedule(i, () -> {
+          started.countDown();
+
+          try {
+            return started.await(1, TimeUnit.SECONDS);
+          } catch (final InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        }));
+      }
+
+      assertThat(condo.pumpAll(metadata -> true), is(4));
+
+      for (final CompletableFuture<Boolean> future : futures) {
+        assertThat(future.get(), is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testPumpRejected() throws Exception {
+    final Condo<String> condo = CoreCondo.<String>builder().executor(runnable -> {
+      throw new RejectedExecutionException("rejected");
+    }).executionMode(ExecutionMode.SINGLE_HOP).build();
+
+    condo.mask(metadata -> true);
+    final CompletableFuture<Void> sync = condo.schedule("sync", () -> null);
+    final CompletableFuture<Void> async =
+        condo.scheduleAsync("async", () -> CompletableFuture.completedFuture(null));
+
+    assertThat(condo.drain(), is(2));
+
+    for (final CompletableFuture<Void> future : Arrays.asList(sync, async)) {
+      try {
+        future.get();
+        fail("released actions should fail when the executor rejects them");
+      } catch (final ExecutionException e) {
+        assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+      }
+    }
+  }
+
+  @Test
+  public void testReleaseOrder() throws Exception {
+    final Comparator<String> readsFirst = Comparator.comparing(m -> m.startsWith("write"));
+
+    final List<String> priority = release(ReleaseOrder.priority(readsFirst),
+        Arrays.asList("write1", "read1", "write2", "read2"));
+    assertThat(priority, is(Arrays.asList("read1", "read2", "write1", "write2")));
+
+    final List<String> perKey = release(ReleaseOrder.perKey(m -> m.charAt(0)),
+        Arrays.asList("a1", "a2", "a3", "b1", "b2"));
+    assertThat(perKey, is(Arrays.asList("a1", "b1", "a2", "b2", "a3")));
+
+    final List<String> fifo = release(ReleaseOrder.fifo(), Arrays.asList("b", "a", "c"));
+    assertThat(fifo, is(Arrays.asList("b", "a", "c")));
+  }
+
+  @Test
+  public void testReleaseOrderPump() throws Exception {
+    final CoreCondo<String> condo = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .releaseOrder(ReleaseOrder.priority(Comparator.comparing(String::length)))
+        .build();
+
+    condo.mask(metadata -> true);
+
+    final CompletableFuture<Void> longest = condo.schedule("longest", () -> null);
+    final CompletableFuture<Void> shortest = condo.schedule("short", () -> null);
+
+    condo.pump(metadata -> true);
+    assertThat(shortest.isDone(), is(true));
+    assertThat(longest.isDone(), is(false));
+
+    final CoreCondo<String> lanes = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .releaseOrder(ReleaseOrder.perKey(m -> m.charAt(0)))
+        .build();
+
+    final Predicate<String> mask = metadata -> true;
+    lanes.mask(mask);
+
+    final List<String> released = new ArrayList<>();
+
+    for (final String m : Arrays.asList("a1", "a2", "a3")) {
+      lanes.schedule(m, () -> released.add(m));
+    }
+
+    lanes.pump(metadata -> true);
+    /* a lane created late starts in the current round, rather than catching up */
+    lanes.schedule("b1", () -> released.add("b1"));
+    lanes.unmask(mask);
+    assertThat(released, is(Arrays.asList("a1", "a2", "b1", "a3")));
+  }
+
+  @Test
+  public void testDeferredCapacity() throws Exception {
+    final CondoMetrics metrics = new CondoMetrics();
+
+    final CoreCondo<String> fail = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .deferredCapacity(1, OverflowPolicy.FAIL)
+        .listener(metrics)
+        .build();
+
+    fail.mask(metadata -> true);
+    final CompletableFuture<Void> first = fail.schedule("first", () -> null);
+    final CompletableFuture<Void> second = fail.schedule("second", () -> null);
+    assertThat(first.isDone(), is(false));
+    assertRejected(second);
+    assertThat(fail.deferredSize(), is(1));
+    assertThat(metrics.rejected(), is(1L));
+
+    final CoreCondo<String> drop = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .deferredCapacity(1, OverflowPolicy.DROP_OLDEST)
+        .build();
+
+    drop.mask(metadata -> true);
+    final CompletableFuture<Void> oldest = drop.schedule("oldest", () -> null);
+
+    /* the dropped future is failed after unlocking, so its callbacks can use the condo */
+    final CompletableFuture<Integer> sizeOnDrop = oldest.handle((v, e) -> {
+      final CompletableFuture<Integer> size = CompletableFuture.supplyAsync(drop::deferredSize);
+
       try {
-        Thread.sleep(100);
-        condo.pump(predicate);
-      } catch (final InterruptedException e) {
-        throw new RuntimeException(e);
+        return size.get(100, TimeUnit.MILLISECONDS);
+      } catch (final Exception timeout) {
+        return -1;
       }
     });
 
-    condo.waitOnce(match -> match == m2).waitOnce(predicate).unmask(predicate);
+    final CompletableFuture<Void> newest = drop.schedule("newest", () -> null);
+    assertRejected(oldest);
+    assertThat(sizeOnDrop.get(), is(1));
+    assertThat(newest.isDone(), is(false));
+    assertThat(drop.deferredSize(), is(1));
 
-    assertThat(f1.isDone(), is(true));
-    assertThat(f2.isDone(), is(true));
+    final CoreCondo<String> bypass = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .deferredCapacity(1, OverflowPolicy.BYPASS)
+        .build();
+
+    bypass.mask(metadata -> true);
+    assertThat(bypass.schedule("deferred", () -> null).isDone(), is(false));
+    assertThat(bypass.schedule("bypassed", () -> null).isDone(), is(true));
+    assertThat(bypass.deferredSize(), is(1));
+  }
+
+  @Test
+  public void testDeferredCapacityBlock() throws Exception {
+    final CoreCondo<String> condo = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .deferredCapacity(1, OverflowPolicy.BLOCK)
+        .build();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+    condo.schedule("first", () -> null);
+
+    final CompletableFuture<CompletableFuture<Void>> second =
+        CompletableFuture.supplyAsync(() -> condo.schedule("second", () -> null));
+
+    try {
+      second.get(10, TimeUnit.MILLISECONDS);
+      fail("scheduling should block while the queue is full");
+    } catch (final TimeoutException e) {
+      // expected
+    }
+
+    condo.pump("first"::equals);
+    condo.unmask(mask);
+    second.get().get();
+  }
+
+  @Test
+  public void testDeferredCapacityBlockUnmasked() throws Exception {
+    final CoreCondo<String> condo = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .deferredCapacity(1, OverflowPolicy.BLOCK)
+        .build();
+
+    final Predicate<String> first = "first"::equals;
+    final Predicate<String> second = "second"::equals;
+    condo.mask(first).mask(second);
+    condo.schedule("first", () -> null);
+
+    final CompletableFuture<CompletableFuture<Void>> blocked =
+        CompletableFuture.supplyAsync(() -> condo.schedule("second", () -> null));
+
+    try {
+      blocked.get(10, TimeUnit.MILLISECONDS);
+      fail("scheduling should block while the queue is full");
+    } catch (final TimeoutException e) {
+      // expected
+    }
+
+    /* nothing is released, but the blocked action is no longer masked */
+    condo.unmask(second);
+    assertThat(blocked.get(100, TimeUnit.MILLISECONDS).isDone(), is(true));
+    assertThat(condo.deferredSize(), is(1));
+  }
+
+  @Test
+  public void testReleasePacing() throws Exception {
+    final Condo<String> condo = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .releasePacing(ReleasePacing.maxInFlight(1))
+        .build();
+
+    final Predicate<String> mask = metadata -> true;
+    final List<CompletableFuture<Void>> started = new ArrayList<>();
+
+    condo.mask(mask);
+
+    for (int i = 0; i < 3; i++) {
+      condo.scheduleAsync("action", () -> {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        started.add(future);
+        return future;
+      });
+    }
+
+    condo.unmask(mask);
+    assertThat(started.size(), is(1));
+
+    started.get(0).complete(null);
+    assertThat(started.size(), is(2));
+
+    started.get(1).complete(null);
+    assertThat(started.size(), is(3));
+  }
+
+  @Test
+  public void testReleasePacingRunsThroughExecutor() throws Exception {
+    final VirtualTimeExecutor scheduler = new VirtualTimeExecutor();
+    final List<Runnable> tasks = new ArrayList<>();
+    final CoreCondo<String> condo = CoreCondo
+        .<String>builder()
+        .virtualTime(scheduler)
+        .executor(tasks::add)
+        .releasePacing(ReleasePacing.rate(1))
+        .build();
+
+    final Predicate<String> mask = metadata -> true;
+    final AtomicInteger started = new AtomicInteger();
+    condo.mask(mask);
+
+    for (int i = 0; i < 2; i++) {
+      condo.scheduleAsync("action", () -> {
+        started.incrementAndGet();
+        return CompletableFuture.completedFuture(null);
+      });
+    }
+
+    condo.unmask(mask);
+    assertThat(tasks.size(), is(1));
+
+    /* paced releases are not run on the scheduler */
+    scheduler.advance(1100, TimeUnit.MILLISECONDS);
+    assertThat(started.get(), is(0));
+    assertThat(tasks.size(), is(2));
+
+    new ArrayList<>(tasks).forEach(Runnable::run);
+    assertThat(started.get(), is(2));
+  }
+
+  @Test
+  public void testDeferredTtl() throws Exception {
+    final VirtualTimeExecutor executor = new VirtualTimeExecutor();
+    final CoreCondo<String> fail = CoreCondo
+        .<String>builder()
+        .virtualTime(executor)
+        .deferredTtl(100, TimeUnit.MILLISECONDS, ExpiryPolicy.FAIL)
+        .build();
+    final CoreCondo<String> release = CoreCondo
+        .<String>builder()
+        .virtualTime(executor)
+        .deferredTtl(100, TimeUnit.MILLISECONDS, ExpiryPolicy.RELEASE)
+        .build();
+
+    fail.mask(metadata -> true);
+    release.mask(metadata -> true);
+
+    final CompletableFuture<String> failed = fail.schedule("failed", () -> "failed");
+    final CompletableFuture<String> released = release.schedule("released", () -> "released");
+
+    executor.advance(90, TimeUnit.MILLISECONDS);
+    assertThat(failed.isDone(), is(false));
+    assertThat(released.isDone(), is(false));
+
+    executor.advance(20, TimeUnit.MILLISECONDS);
+    assertThat(fail.deferredSize(), is(0));
+    assertThat(release.deferredSize(), is(0));
+    assertThat(released.get(), is("released"));
+
+    try {
+      failed.get();
+      fail("action should have expired");
+    } catch (final ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TimeoutException.class));
+    }
+
+    /* the timer stops ticking once nothing is deferred */
+    assertThat(executor.queued(), is(0));
+  }
+
+  @Test
+  public void testDeferredTtlReleasesThroughExecutor() throws Exception {
+    final VirtualTimeExecutor scheduler = new VirtualTimeExecutor();
+    final List<Runnable> tasks = new ArrayList<>();
+    final CoreCondo<String> condo = CoreCondo
+        .<String>builder()
+        .virtualTime(scheduler)
+        .executor(tasks::add)
+        .deferredTtl(100, TimeUnit.MILLISECONDS, ExpiryPolicy.RELEASE)
+        .build();
+
+    condo.mask(metadata -> true);
+
+    final AtomicInteger started = new AtomicInteger();
+    condo.scheduleAsync("expired", () -> {
+      started.incrementAndGet();
+      return CompletableFuture.completedFuture(null);
+    });
+
+    /* expired actions are not run on the scheduler */
+    scheduler.advance(110, TimeUnit.MILLISECONDS);
+    assertThat(started.get(), is(0));
+    assertThat(tasks.size(), is(1));
+
+    tasks.get(0).run();
+    assertThat(started.get(), is(1));
+  }
+
+  @Test
+  public void testDeferredTtlRemovesReleased() throws Exception {
+    final VirtualTimeExecutor executor = new VirtualTimeExecutor();
+    final CoreCondo<String> condo = CoreCondo
+        .<String>builder()
+        .virtualTime(executor)
+        .deferredTtl(1, TimeUnit.HOURS, ExpiryPolicy.FAIL)
+        .build();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+    condo.schedule("released", () -> null);
+    condo.schedule("cancelled", () -> null).cancel(false);
+    condo.unmask(mask);
+    executor.runPending();
+
+    /* the timer stops ticking on its next tick, long before the actions would have expired */
+    executor.advance(5, TimeUnit.MINUTES);
+    assertThat(executor.queued(), is(0));
+  }
+
+  @Test
+  public void testCancelDeferred() throws Exception {
+    final CoreCondo<String> condo = CoreCondo.<String>builder().executor(Runnable::run).build();
+    final AtomicInteger runs = new AtomicInteger();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    final CompletableFuture<Integer> cancelled = condo.schedule("cancelled", runs::incrementAndGet);
+    final CompletableFuture<Integer> kept = condo.schedule("kept", runs::incrementAndGet);
+    assertThat(condo.deferredSize(), is(2));
+
+    assertThat(cancelled.cancel(false), is(true));
+    assertThat(condo.deferredSize(), is(1));
+
+    condo.unmask(mask);
+    assertThat(kept.get(), is(1));
+    assertThat(runs.get(), is(1));
+  }
+
+  @Test
+  public void testCancelRunning() throws Exception {
+    final Condo<String> condo = CoreCondo.<String>builder().executor(Runnable::run).build();
+    final CompletableFuture<Void> inner = new CompletableFuture<>();
+
+    final CompletableFuture<Void> future = condo.scheduleAsync("running", () -> inner);
+    assertThat(future.cancel(false), is(true));
+    assertThat(inner.isCancelled(), is(true));
+  }
+
+  @Test
+  public void testScope() throws Exception {
+    final Condo<String> condo = CoreCondo.<String>builder().executor(Runnable::run).build();
+
+    final Predicate<String> inherited = metadata -> true;
+    condo.mask(inherited);
+
+    final ScopedCondo<String> scope = condo.scope();
+    final CompletableFuture<Void> waited = condo.waitOnceAsync("released"::equals);
+    final CompletableFuture<String> released = scope.schedule("released", () -> "released");
+    assertThat(released.isDone(), is(false));
+
+    condo.unmask(inherited);
+    assertThat(released.get(), is("released"));
+    assertThat(waited.isDone(), is(true));
+
+    scope.mask(metadata -> true);
+    final CompletableFuture<String> dropped = scope.schedule("dropped", () -> "dropped");
+
+    scope.close();
+    assertThat(dropped.isCancelled(), is(true));
+
+    try {
+      scope.schedule("closed", () -> "closed").get();
+      fail("scheduling in a closed scope should be rejected");
+    } catch (final ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+    }
+  }
+
+  @Test
+  public void testInvoke() throws Exception {
+    final Condo<String> condo = CoreCondo.<String>builder().build();
+
+    final CompletableFuture<Void> inline = condo.waitOnceAsync("inline"::equals);
+    final Thread caller = Thread.currentThread();
+    assertThat(condo.invoke("inline", () -> Thread.currentThread() == caller), is(true));
+    assertThat(inline.isDone(), is(true));
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    final CompletableFuture<Integer> masked =
+        CompletableFuture.supplyAsync(() -> condo.invoke("masked", () -> 42));
+
+    try {
+      masked.get(10, TimeUnit.MILLISECONDS);
+      fail("invoking should block while masked");
+    } catch (final TimeoutException e) {
+      // expected
+    }
+
+    condo.unmask(mask);
+    assertThat(masked.get(), is(42));
+  }
+
+  @Test
+  public void testDefaultMethods() throws Exception {
+    final Condo<String> condo = new OriginalCondo<>(
+        CoreCondo.<String>builder().executor(Runnable::run).build());
+
+    assertThat(condo.isActive(), is(true));
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    final CompletableFuture<Integer> masked =
+        CompletableFuture.supplyAsync(() -> condo.invoke("masked", () -> 42));
+
+    try {
+      masked.get(10, TimeUnit.MILLISECONDS);
+      fail("invoking should block while masked");
+    } catch (final TimeoutException e) {
+      // expected
+    }
+
+    condo.unmask(mask);
+    assertThat(masked.get(), is(42));
+
+    try {
+      condo.scope();
+      fail("scopes should not be supported");
+    } catch (final UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDefaultTimeouts() throws Exception {
+    final Condo<String> condo = new AsyncCondo<>(
+        CoreCondo.<String>builder().executor(Runnable::run).build());
+
+    final CompletableFuture<Void> waited =
+        condo.waitAnyAsync("action"::equals, 1, TimeUnit.SECONDS);
+    final CompletableFuture<Void> timeout =
+        condo.waitAnyAsync("never"::equals, 10, TimeUnit.MILLISECONDS);
+
+    condo.schedule("action", () -> null);
+    assertThat(waited.isDone(), is(true));
+
+    try {
+      timeout.get();
+      fail("waiting should time out");
+    } catch (final ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TimeoutException.class));
+    }
+  }
+
+  @Test
+  public void testRetentionMaxEntries() throws InterruptedException {
+    final Condo<Meta> condo = CoreCondo
+        .<Meta>builder()
+        .executor(Runnable::run)
+        .retention(Retention.maxEntries(1).withFailOnEviction())
+        .build();
+
+    final Meta m1 = Mockito.mock(Meta.class);
+    final Meta m2 = Mockito.mock(Meta.class);
+
+    condo.schedule(m1, () -> null);
+    condo.schedule(m2, () -> null);
+
+    condo.waitAny(match -> match == m2);
+
+    try {
+      condo.waitOnce(match -> match == m1);
+      fail("expected history to be evicted");
+    } catch (final HistoryEvictedException e) {
+      /* expected */
+    }
+  }
+
+  @Test
+  public void testRetentionConsumedEviction() throws InterruptedException {
+    final Condo<Meta> condo = CoreCondo
+        .<Meta>builder()
+        .executor(Runnable::run)
+        .retention(Retention.maxEntries(1))
+        .build();
+
+    final Meta m1 = Mockito.mock(Meta.class);
+    final Meta m2 = Mockito.mock(Meta.class);
+
+    condo.schedule(m1, () -> null);
+    condo.waitOnce(match -> match == m1);
+    condo.schedule(m2, () -> null);
+
+    /* m1 was consumed before being evicted, so it is not needed */
+    condo.waitOnce(match -> match == m2);
+  }
+
+  @Test(expected = HistoryEvictedException.class)
+  public void testRetentionMaxAge() throws InterruptedException {
+    final AtomicLong now = new AtomicLong();
+
+    final Condo<Meta> condo = CoreCondo
+        .<Meta>builder()
+        .executor(Runnable::run)
+        .ticker(now::get)
+        .retention(Retention.maxAge(10, TimeUnit.NANOSECONDS).withFailOnEviction())
+        .build();
+
+    final Meta m = Mockito.mock(Meta.class);
+
+    condo.schedule(m, () -> null);
+    now.addAndGet(11);
+    condo.waitAny(match -> match == m);
+  }
+
+  @Test(expected = HistoryEvictedException.class)
+  public void testRetentionNone() throws InterruptedException {
+    final Condo<Meta> condo = CoreCondo
+        .<Meta>builder()
+        .executor(Runnable::run)
+        .retention(Retention.none().withFailOnEviction())
+        .build();
+
+    final Meta m = Mockito.mock(Meta.class);
+
+    condo.schedule(m, () -> null);
+    condo.waitOnce(match -> match == m);
+  }
+
+  @Test
+  public void testWaitAfterEviction() throws Exception {
+    final Condo<String> bounded = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .retention(Retention.maxEntries(1))
+        .build();
+    final Condo<String> none = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .retention(Retention.none())
+        .build();
+
+    for (final Condo<String> condo : Arrays.asList(bounded, none)) {
+      condo.schedule("first", () -> null);
+      condo.schedule("second", () -> null);
+
+      final CompletableFuture<Void> any = condo.waitAnyAsync("third"::equals);
+      final CompletableFuture<Void> once = condo.waitOnceAsync("third"::equals);
+      assertThat(any.isDone(), is(false));
+      assertThat(once.isDone(), is(false));
+
+      condo.schedule("third", () -> null);
+      any.get();
+      once.get();
+    }
+  }
+
+  @Test
+  public void testWaitOnceAsync() throws Exception {
+    final Condo<Meta> condo = CoreCondo.<Meta>builder().executor(Runnable::run).build();
+    final Meta m = Mockito.mock(Meta.class);
+
+    final CompletableFuture<Void> wait = condo.waitOnceAsync(match -> match == m);
+    assertThat(wait.isDone(), is(false));
+
+    condo.schedule(m, () -> null);
+    assertThat(wait.isDone(), is(true));
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void testWaitTimeout() throws Exception {
+    final Condo<Meta> condo = CoreCondo.buildDefault();
+    condo.waitAny(match -> true, 10, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testWaitAsyncTimeout() throws Exception {
+    final Condo<Meta> condo = CoreCondo.<Meta>builder().executor(Runnable::run).build();
+    final Meta m = Mockito.mock(Meta.class);
+
+    final CompletableFuture<Void> wait =
+        condo.waitOnceAsync(match -> match == m, 10, TimeUnit.MILLISECONDS);
+
+    try {
+      wait.get();
+      fail("expected wait to time out");
+    } catch (final ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TimeoutException.class));
+    }
+
+    /* the timed out waiter must not consume the action */
+    condo.schedule(m, () -> null);
+    condo.waitOnce(match -> match == m);
+  }
+
+  @Test
+  public void testPumpAsync() throws Exception {
+    final Condo<Meta> condo = CoreCondo.<Meta>builder().executor(Runnable::run).build();
+    final Meta m = Mockito.mock(Meta.class);
+
+    final Predicate<Meta> predicate = match -> match == m;
+    condo.mask(predicate);
+
+    final CompletableFuture<Void> pump = condo.pumpAsync(predicate);
+    assertThat(pump.isDone(), is(false));
+
+    final CompletableFuture<Void> future = condo.schedule(m, () -> null);
+    assertThat(pump.isDone(), is(true));
+    assertThat(future.isDone(), is(true));
+  }
+
+  @Test
+  public void testSingleHop() throws Exception {
+    final AtomicInteger submitted = new AtomicInteger();
+
+    final Condo<Meta> condo = CoreCondo
+        .<Meta>builder()
+        .executor(runnable -> {
+          submitted.incrementAndGet();
+          runnable.run();
+        })
+        .executionMode(ExecutionMode.SINGLE_HOP)
+        .build();
+
+    final Meta m = Mockito.mock(Meta.class);
+
+    assertThat(condo.schedule(m, () -> 42).get(), is(42));
+    assertThat(submitted.get(), is(1));
+
+    assertThat(condo.scheduleAsync(m, () -> CompletableFuture.completedFuture(42)).get(), is(42));
+    assertThat(submitted.get(), is(1));
+  }
+
+  @Test
+  public void testTypedPredicates() throws Exception {
+    final Condo<Object> condo = CoreCondo.builder().executor(Runnable::run).build();
+
+    final Predicate<Object> untyped = match -> {
+      throw new IllegalStateException("should not be evaluated");
+    };
+
+    final Predicate<Object> maskString = TypedPredicate.of(String.class);
+    final Predicate<Object> maskNever = TypedPredicate.of(Integer.class, untyped);
+
+    condo.mask(maskString).mask(maskNever);
+
+    final CompletableFuture<Void> string = condo.schedule("hello", () -> null);
+    final CompletableFuture<Void> pumped = condo.schedule("world", () -> null);
+    assertThat(string.isDone(), is(false));
+    assertThat(pumped.isDone(), is(false));
+
+    condo.pump(TypedPredicate.of(String.class, "world"::equals));
+    assertThat(pumped.isDone(), is(true));
+
+    condo.waitOnceAsync(TypedPredicate.of(Integer.class, untyped));
+    condo.unmask(maskString).waitOnce(TypedPredicate.of(String.class, "hello"::equals));
+    assertThat(string.isDone(), is(true));
+  }
+
+  @Test
+  public void testExactPredicates() throws Exception {
+    final Condo<String> condo = CoreCondo.<String>builder().executor(Runnable::run).build();
+
+    final Predicate<String> mask = ExactPredicate.of("hello");
+    condo.mask(mask).mask(ExactPredicate.of(new String("hello")));
+
+    final CompletableFuture<Void> waitHello = condo.waitOnceAsync(ExactPredicate.of("hello"));
+    final CompletableFuture<Void> hello = condo.schedule("hello", () -> null);
+    final CompletableFuture<Void> world = condo.schedule("world", () -> null);
+
+    assertThat(hello.isDone(), is(false));
+    assertThat(world.isDone(), is(true));
+    assertThat(waitHello.isDone(), is(false));
+
+    /* still masked by the other mask with an equal value */
+    condo.unmask(mask);
+    assertThat(hello.isDone(), is(false));
+
+    condo.pump(ExactPredicate.of("hello"));
+    assertThat(hello.isDone(), is(true));
+    assertThat(waitHello.isDone(), is(true));
+  }
+
+  @Test
+  public void testSharded() throws Exception {
+    final Condo<String> condo = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .shards(4)
+        .shardKey(metadata -> metadata.charAt(0))
+        .build();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    final CompletableFuture<Void> a = condo.schedule("a1", () -> null);
+    final CompletableFuture<Void> b = condo.schedule("b1", () -> null);
+    final CompletableFuture<Void> c = condo.schedule("c1", () -> null);
+
+    condo.pump(KeyedPredicate.of('b', "b1"::equals));
+    assertThat(b.isDone(), is(true));
+
+    /* waits spanning every shard are still matched against the history of all of them */
+    final CompletableFuture<Void> both = condo.waitOnceAsync(
+        Arrays.<Predicate<String>>asList("a1"::equals, "c1"::equals));
+    assertThat(both.isDone(), is(false));
+
+    condo.unmask(mask);
+    assertThat(a.isDone(), is(true));
+    assertThat(c.isDone(), is(true));
+    both.get();
+
+    condo.waitAny(KeyedPredicate.of('b', "b1"::equals));
+    condo.waitAny("c1"::equals);
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    final CondoMetrics metrics = new CondoMetrics();
+
+    final Condo<String> condo =
+        CoreCondo.<String>builder().executor(Runnable::run).listener(metrics).build();
+
+    final Predicate<String> mask = "masked"::equals;
+    condo.mask(mask);
+
+    condo.schedule("masked", () -> null);
+    condo.schedule("masked", () -> null);
+    condo.schedule("failing", () -> {
+      throw new IllegalStateException("failing");
+    });
+
+    assertThat(metrics.scheduled(), is(3L));
+    assertThat(metrics.queueDepth(), is(2L));
+    assertThat(metrics.activeMasks(), is(1L));
+    assertThat(metrics.failed(), is(1L));
+
+    condo.unmask(mask);
+
+    assertThat(metrics.released(), is(2L));
+    assertThat(metrics.queueDepth(), is(0L));
+    assertThat(metrics.activeMasks(), is(0L));
+    assertThat(metrics.completed(), is(3L));
+    assertThat(metrics.inFlight(), is(0L));
+  }
+
+  @Test
+  public void testScopeMetrics() throws Exception {
+    final CondoMetrics metrics = new CondoMetrics();
+
+    final Condo<String> condo =
+        CoreCondo.<String>builder().executor(Runnable::run).listener(metrics).build();
+
+    final Predicate<String> inherited = metadata -> true;
+    condo.mask(inherited);
+
+    final ScopedCondo<String> scope = condo.scope();
+    scope.schedule("action", () -> null);
+    scope.mask("kept"::equals);
+    assertThat(metrics.activeMasks(), is(2L));
+
+    /* inherited masks are only counted once */
+    condo.unmask(inherited);
+    assertThat(metrics.released(), is(1L));
+    assertThat(metrics.activeMasks(), is(1L));
+
+    scope.close();
+    assertThat(metrics.activeMasks(), is(0L));
+  }
+
+  @Test
+  public void testMultipleListeners() throws Exception {
+    final CondoMetrics first = new CondoMetrics();
+    final CondoMetrics second = new CondoMetrics();
+    final List<String> deferred = new ArrayList<>();
+
+    final Condo<String> condo = CoreCondo
+        .<String>builder()
+        .executor(Runnable::run)
+        .listener(first)
+        .listener(CondoListener.composite(second, new CondoListener<String>() {
+          @Override
+          public void onDeferred(final String metadata) {
+            deferred.add(metadata);
+          }
+        }))
+        .build();
+
+    final Predicate<String> mask = "masked"::equals;
+    condo.mask(mask);
+    condo.schedule("masked", () -> null);
+    condo.schedule("unmasked", () -> null);
+    condo.unmask(mask);
+
+    assertThat(first.scheduled(), is(2L));
+    assertThat(first.released(), is(1L));
+    assertThat(second.scheduled(), is(2L));
+    assertThat(second.released(), is(1L));
+    assertThat(deferred, is(Collections.singletonList("masked")));
+  }
+
+  @Test
+  public void testLatencyHistograms() throws Exception {
+    final VirtualTimeExecutor executor = new VirtualTimeExecutor();
+    final LatencyHistograms histograms = new LatencyHistograms();
+
+    final Condo<String> condo =
+        CoreCondo.<String>builder().virtualTime(executor).listener(histograms).build();
+
+    final Predicate<String> mask = metadata -> true;
+    condo.mask(mask);
+
+    condo.scheduleAsync("action", () -> {
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+      executor.schedule(() -> future.complete(null), 5, TimeUnit.MILLISECONDS);
+      return future;
+    });
+
+    executor.advance(10, TimeUnit.MILLISECONDS);
+    condo.unmask(mask);
+    executor.runUntilIdle();
+
+    final LatencyHistograms.Latencies latencies = histograms.byType().get(String.class);
+
+    assertThat(latencies.deferred().snapshot().percentile(50D),
+        is(TimeUnit.MILLISECONDS.toNanos(10)));
+    assertThat(latencies.execution().snapshot().percentile(50D),
+        is(TimeUnit.MILLISECONDS.toNanos(5)));
+    assertThat(latencies.endToEnd().snapshot().percentile(50D),
+        is(TimeUnit.MILLISECONDS.toNanos(15)));
+
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    for (long value = 1; value <= 100000; value++) {
+      histogram.record(value * 1000);
+    }
+
+    final LatencySnapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count(), is(100000L));
+    assertThat(Math.abs(snapshot.percentile(99D) - 99000000L) < 990000L, is(true));
+    assertThat(snapshot.percentile(100D), is(100000000L));
+
+    /* every value shares its bucket only with values less than one percent below it */
+    for (int shift = 0; shift < Long.SIZE - 1; shift++) {
+      for (final long value : new long[]{1L << shift, 3L << shift >>> 1, (2L << shift) - 1}) {
+        final long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+        assertThat(highest >= value, is(true));
+        assertThat((highest - value) * 100 < Math.max(value, 1L), is(true));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTypedPredicateInterface() {
+    TypedPredicate.<Object, Meta>of(Meta.class);
+  }
+
+  /**
+   * Schedule the given metadata while masked, and record the order they are run in once unmasked.
+   */
+  private static List<String> release(final ReleaseOrder<String> order, final List<String> metadata)
+      throws Exception {
+    final CoreCondo<String> condo =
+        CoreCondo.<String>builder().executor(Runnable::run).releaseOrder(order).build();
+
+    final Predicate<String> mask = m -> true;
+    condo.mask(mask);
+
+    final List<String> released = new ArrayList<>();
+
+    for (final String m : metadata) {
+      condo.schedule(m, () -> released.add(m));
+    }
+
+    condo.unmask(mask);
+    return released;
+  }
+
+  private static void assertRejected(final CompletableFuture<?> future) throws Exception {
+    try {
+      future.get();
+      fail("future should be rejected");
+    } catch (final ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+    }
   }
 
   interface Meta {
   }
+
+  /**
+   * A condo which only implements the methods that were there from the first release.
+   */
+  /**
+   * A condo that implements the original methods and waiting without blocking.
+   */
+  private static final class AsyncCondo<M> extends OriginalCondo<M> {
+    private final Condo<M> delegate;
+
+    AsyncCondo(final Condo<M> delegate) {
+      super(delegate);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitAnyAsync(final Predicate<M> predicate) {
+      return delegate.waitAnyAsync(predicate);
+    }
+  }
+
+  private static class OriginalCondo<M> implements Condo<M> {
+    private final Condo<M> delegate;
+
+    OriginalCondo(final Condo<M> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> schedule(final M metadata, final Supplier<T> action) {
+      return delegate.schedule(metadata, action);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> scheduleAsync(
+        final M metadata, final Supplier<? extends CompletionStage<T>> action
+    ) {
+      return delegate.scheduleAsync(metadata, action);
+    }
+
+    @Override
+    public Condo<M> mask(final Predicate<M> predicate) {
+      delegate.mask(predicate);
+      return this;
+    }
+
+    @Override
+    public Condo<M> unmask(final Predicate<M> predicate) {
+      delegate.unmask(predicate);
+      return this;
+    }
+
+    @Override
+    public Condo<M> pump(final Predicate<M> predicate) throws InterruptedException {
+      delegate.pump(predicate);
+      return this;
+    }
+
+    @Override
+    public Condo<M> pump(final Collection<? extends Predicate<M>> predicates)
+        throws InterruptedException {
+      delegate.pump(predicates);
+      return this;
+    }
+
+    @Override
+    public Condo<M> waitAny(final Predicate<M> predicate) throws InterruptedException {
+      delegate.waitAny(predicate);
+      return this;
+    }
+
+    @Override
+    public Condo<M> waitOnce(final Predicate<M> predicate) throws InterruptedException {
+      delegate.waitOnce(predicate);
+      return this;
+    }
+
+    @Override
+    public Condo<M> waitOnce(final Collection<? extends Predicate<M>> predicates)
+        throws InterruptedException {
+      delegate.waitOnce(predicates);
+      return this;
+    }
+  }
 }
@@ -1,11 +1,10 @@
 package eu.toolchain.condo;
 
-import com.google.common.base.Throwables;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 import static org.junit.Assert.assertEquals;
@@ -17,54 +16,64 @@ import static org.mockito.Mockito.verify;
 public class CondoTest {
   final Entity entity = new Entity("John");
 
+  private VirtualTimeExecutor executor;
   private InMemoryDatabase database;
   private Condo<DatabaseMetadata> condo;
   private Service service;
 
   @Before
   public void setUp() {
+    executor = new VirtualTimeExecutor();
     database = new InMemoryDatabase();
-    condo = CoreCondo.buildDefault();
-    service = new Service(new Database_Condo(condo, database));
+    condo = CoreCondo.<DatabaseMetadata>builder().virtualTime(executor).build();
+    service = new Service(executor, new Database_Condo(condo, database));
   }
 
   @Test
   public void testWriteNever() {
     service.put("hello", entity);
-    /* operation takes 50ms, this will _probably_ never pass */
+    executor.advance(49, TimeUnit.MILLISECONDS);
+    /* operation takes 50ms, which has not passed yet */
     assertNull(database.read("hello"));
   }
 
   @Test
   public void testWriteWait() throws Exception {
     service.put("hello", entity);
+    executor.runUntilIdle();
     condo.waitOnce(m -> m instanceof DatabaseMetadata.Write);
     assertEquals(entity, database.read("hello"));
   }
 
   @Test
   public void testWaitForSpecificEntity() throws Exception {
-    ForkJoinPool.commonPool().execute(() -> {
-      service.put("hello", entity);
-    });
-
-    final Predicate<DatabaseMetadata> writeWorld = writeEntity("world");
+    final Predicate<DatabaseMetadata> writeWorld =
+        DatabaseMetadata.Write.matching("world", entity);
 
     condo.mask(writeWorld);
 
+    service.put("hello", entity);
     service.put("world", entity);
-    condo.waitOnce(writeEntity("hello"));
+    executor.runUntilIdle();
+    condo.waitOnce(DatabaseMetadata.Write.matching("hello", entity));
 
     assertEquals(entity, database.read("hello"));
     assertNull(database.read("world"));
 
-    condo.pump(writeWorld).waitOnce(writeWorld);
+    condo.pump(writeWorld);
+    executor.runPending();
+    condo.waitOnce(writeWorld);
 
     assertEquals(entity, database.read("hello"));
     assertEquals(entity, database.read("world"));
   }
 
-  static Predicate<DatabaseMetadata> writeEntity(final String id) {
-    return m -> m instanceof DatabaseMetadata.Write && ((DatabaseMetadata.Write) m).id().equals(id);
+  @Test
+  public void testDisabled() {
+    final Database database = new Database_Condo(Condo.disabled(), this.database);
+
+    /* an inactive condo calls the delegate directly */
+    database.write("hello", entity);
+    assertEquals(entity, database.read("hello"));
   }
 }
@@ -1,26 +1,18 @@
 package eu.toolchain.condo;
 
-import com.google.common.base.Throwables;
 import lombok.RequiredArgsConstructor;
 
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 public class Service {
-  private final ForkJoinPool commonPool = ForkJoinPool.commonPool();
-
+  private final ScheduledExecutorService scheduler;
   private final Database database;
 
   public void put(final String id, final Entity entity) {
-    commonPool.execute(() -> {
-      try {
-        Thread.sleep(50);
-      } catch (InterruptedException e) {
-        throw Throwables.propagate(e);
-      }
-
-      database.write(id, entity);
-    });
+    /* writing takes 50ms */
+    scheduler.schedule(() -> database.write(id, entity), 50, TimeUnit.MILLISECONDS);
   }
 
   public Entity get(final String id) {
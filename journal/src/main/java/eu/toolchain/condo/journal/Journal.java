@@ -0,0 +1,270 @@
+package eu.toolchain.condo.journal;
+
+import eu.toolchain.condo.CondoListener;
+import eu.toolchain.condo.Ticker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A listener that records what a condo is doing into a memory-mapped ring file.
+ *
+ * <p>Every event is written as a fixed-size binary record, containing the type of the event, a
+ * monotonic timestamp, the id of the thread that caused it, a sequence number, and the id of the
+ * type of metadata it concerns. Once the ring is full, the oldest records are overwritten.
+ *
+ * <p>Recording an event does not allocate, except for the first time a type of metadata is seen.
+ * Since the file is memory-mapped, records survive the process crashing. They can be decoded into
+ * a timeline using {@link JournalReader}.
+ *
+ * <p>The file has the following layout, all values are big endian:
+ *
+ * <pre>
+ * header (64 KiB):
+ *   0: int magic, 4: int version, 8: int record size, 12: int capacity,
+ *   16: long wall clock millis when opened, 24: long ticker nanos when opened,
+ *   32: int number of types, 36: int end of the type table
+ *   64: type table, every entry is a short length followed by the UTF-8 encoded type name
+ * records (capacity * 40 bytes):
+ *   0: long sequence + 1, 8: long ticker nanos, 16: long thread id, 24: long value,
+ *   32: int type id, 36: int event
+ * </pre>
+ *
+ * <p>The sequence of a record is written last, and cleared before the record is overwritten, so
+ * that records which are only partially written can be detected. If the type table is full, new
+ * types are recorded as unknown.
+ *
+ * @see eu.toolchain.condo.CoreCondo.Builder#listener(CondoListener)
+ */
+public final class Journal implements CondoListener<Object>, Closeable {
+  static final int MAGIC = 0x434f4e44;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64 * 1024;
+  static final int RECORD_SIZE = 40;
+
+  static final int MAGIC_OFFSET = 0;
+  static final int VERSION_OFFSET = 4;
+  static final int RECORD_SIZE_OFFSET = 8;
+  static final int CAPACITY_OFFSET = 12;
+  static final int OPENED_MILLIS_OFFSET = 16;
+  static final int OPENED_NANOS_OFFSET = 24;
+  static final int TYPE_COUNT_OFFSET = 32;
+  static final int TYPE_END_OFFSET = 36;
+  static final int TYPES_OFFSET = 64;
+
+  static final int SEQUENCE_OFFSET = 0;
+  static final int TIMESTAMP_OFFSET = 8;
+  static final int THREAD_OFFSET = 16;
+  static final int VALUE_OFFSET = 24;
+  static final int TYPE_OFFSET = 32;
+  static final int EVENT_OFFSET = 36;
+
+  /**
+   * Type id of events without metadata, or with metadata of an unknown type.
+   */
+  static final int NO_TYPE = -1;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final Ticker ticker;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Type ids, assigned the first time a type is seen.
+   */
+  private final ClassValue<Integer> types = new ClassValue<Integer>() {
+    @Override
+    protected Integer computeValue(final Class<?> type) {
+      return register(type);
+    }
+  };
+
+  private final Lock typeLock = new ReentrantLock();
+  /**
+   * Number of registered types, guarded by {@link #typeLock}.
+   */
+  private int typeCount = 0;
+  /**
+   * End of the type table, guarded by {@link #typeLock}.
+   */
+  private int typeEnd = TYPES_OFFSET;
+
+  private Journal(
+      final FileChannel channel, final MappedByteBuffer buffer, final int capacity,
+      final Ticker ticker
+  ) {
+    this.channel = channel;
+    this.buffer = buffer;
+    this.capacity = capacity;
+    this.ticker = ticker;
+  }
+
+  @Override
+  public void onScheduled(final Object metadata) {
+    write(JournalEvent.SCHEDULED, metadata, 0L);
+  }
+
+  @Override
+  public void onDeferred(final Object metadata) {
+    write(JournalEvent.DEFERRED, metadata, 0L);
+  }
+
+  @Override
+  public void onRejected(final Object metadata) {
+    write(JournalEvent.REJECTED, metadata, 0L);
+  }
+
+  @Override
+  public void onDropped(final Object metadata) {
+    write(JournalEvent.DROPPED, metadata, 0L);
+  }
+
+  @Override
+  public void onReleased(final Object metadata, final long deferredNanos) {
+    write(JournalEvent.RELEASED, metadata, deferredNanos);
+  }
+
+  @Override
+  public void onStarted(final Object metadata) {
+    write(JournalEvent.STARTED, metadata, 0L);
+  }
+
+  @Override
+  public void onCompleted(
+      final Object metadata, final long executionNanos, final long totalNanos,
+      final Throwable error
+  ) {
+    final JournalEvent event = error == null ? JournalEvent.COMPLETED : JournalEvent.FAILED;
+    write(event, metadata, executionNanos);
+  }
+
+  @Override
+  public void onMasked(final Predicate<?> mask) {
+    write(JournalEvent.MASKED, null, 0L);
+  }
+
+  @Override
+  public void onUnmasked(final Predicate<?> mask, final int released, final long evaluationNanos) {
+    write(JournalEvent.UNMASKED, null, released);
+  }
+
+  /**
+   * Flush all records to the file, and close it.
+   *
+   * <p>The journal must not be used as a listener after it has been closed.
+   *
+   * @throws IOException if the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+
+  private void write(final JournalEvent event, final Object metadata, final long value) {
+    final long seq = sequence.getAndIncrement();
+    final int offset = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+
+    buffer.putLong(offset + SEQUENCE_OFFSET, 0L);
+    buffer.putLong(offset + TIMESTAMP_OFFSET, ticker.nanoTime());
+    buffer.putLong(offset + THREAD_OFFSET, Thread.currentThread().getId());
+    buffer.putLong(offset + VALUE_OFFSET, value);
+    buffer.putInt(offset + TYPE_OFFSET, typeOf(metadata));
+    buffer.putInt(offset + EVENT_OFFSET, event.ordinal());
+    buffer.putLong(offset + SEQUENCE_OFFSET, seq + 1);
+  }
+
+  private int typeOf(final Object metadata) {
+    return metadata == null ? NO_TYPE : types.get(metadata.getClass());
+  }
+
+  private Integer register(final Class<?> type) {
+    final byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+
+    typeLock.lock();
+
+    try {
+      if (typeEnd + 2 + name.length > HEADER_SIZE || name.length > Short.MAX_VALUE) {
+        return NO_TYPE;
+      }
+
+      final ByteBuffer table = buffer.duplicate();
+      table.position(typeEnd);
+      table.putShort((short) name.length);
+      table.put(name);
+
+      typeEnd = table.position();
+      buffer.putInt(TYPE_END_OFFSET, typeEnd);
+      buffer.putInt(TYPE_COUNT_OFFSET, typeCount + 1);
+      return typeCount++;
+    } finally {
+      typeLock.unlock();
+    }
+  }
+
+  /**
+   * Open a journal with the system ticker, see {@link #open(Path, int, Ticker)}.
+   *
+   * @param path path of the file to write
+   * @param capacity number of records in the ring
+   * @return a new journal
+   * @throws IOException if the file could not be opened
+   */
+  public static Journal open(final Path path, final int capacity) throws IOException {
+    return open(path, capacity, Ticker.system());
+  }
+
+  /**
+   * Open a journal that writes to the given file.
+   *
+   * <p>The file is created if it does not exist, and any existing journal in it is discarded.
+   *
+   * @param path path of the file to write
+   * @param capacity number of records in the ring
+   * @param ticker ticker used to timestamp records
+   * @return a new journal
+   * @throws IOException if the file could not be opened
+   */
+  public static Journal open(final Path path, final int capacity, final Ticker ticker)
+      throws IOException {
+    if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+      throw new IllegalArgumentException("Capacity out of range: " + capacity);
+    }
+
+    final long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    final MappedByteBuffer buffer;
+
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    buffer.putInt(MAGIC_OFFSET, MAGIC);
+    buffer.putInt(VERSION_OFFSET, VERSION);
+    buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+    buffer.putInt(CAPACITY_OFFSET, capacity);
+    buffer.putLong(OPENED_MILLIS_OFFSET, System.currentTimeMillis());
+    buffer.putLong(OPENED_NANOS_OFFSET, ticker.nanoTime());
+    buffer.putInt(TYPE_COUNT_OFFSET, 0);
+    buffer.putInt(TYPE_END_OFFSET, TYPES_OFFSET);
+    return new Journal(channel, buffer, capacity, ticker);
+  }
+}
@@ -0,0 +1,60 @@
+package eu.toolchain.condo.journal;
+
+/**
+ * Type of event recorded in a journal.
+ *
+ * <p>Events are stored by their ordinal, so new events must only be added at the end.
+ */
+public enum JournalEvent {
+  /**
+   * An action has been scheduled.
+   */
+  SCHEDULED,
+  /**
+   * An action has been deferred because it is masked.
+   */
+  DEFERRED,
+  /**
+   * An action has been rejected, because the deferred queue was full or the condo was closed.
+   */
+  REJECTED,
+  /**
+   * A deferred action has been dropped without being run, to make room in the deferred queue,
+   * because its future was cancelled, because it failed on expiry, or because the condo was closed.
+   */
+  DROPPED,
+  /**
+   * A deferred action has been released, the value is how long it was deferred in nanoseconds.
+   */
+  RELEASED,
+  /**
+   * An action has started.
+   */
+  STARTED,
+  /**
+   * An action has completed successfully, the value is how long it took in nanoseconds.
+   */
+  COMPLETED,
+  /**
+   * An action has failed, the value is how long it took in nanoseconds.
+   */
+  FAILED,
+  /**
+   * A mask has been added.
+   */
+  MASKED,
+  /**
+   * A mask has been removed, the value is the number of actions it released.
+   */
+  UNMASKED;
+
+  private static final JournalEvent[] VALUES = values();
+
+  static JournalEvent fromCode(final int code) {
+    if (code < 0 || code >= VALUES.length) {
+      throw new IllegalArgumentException("Unknown event code: " + code);
+    }
+
+    return VALUES[code];
+  }
+}
@@ -0,0 +1,114 @@
+package eu.toolchain.condo.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decodes the file written by a {@link Journal} into a {@link Timeline}.
+ *
+ * <p>Can be used after a run, or after the process writing the journal has crashed. Records which
+ * were only partially written when the process crashed are skipped.
+ */
+public final class JournalReader {
+  private JournalReader() {
+  }
+
+  /**
+   * Read the journal in the given file.
+   *
+   * @param path path of the journal file
+   * @return the decoded timeline
+   * @throws IOException if the file could not be read, or is not a journal
+   */
+  public static Timeline read(final Path path) throws IOException {
+    final ByteBuffer buffer;
+
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.limit() < Journal.HEADER_SIZE
+        || buffer.getInt(Journal.MAGIC_OFFSET) != Journal.MAGIC) {
+      throw new IOException("Not a journal: " + path);
+    }
+
+    final int version = buffer.getInt(Journal.VERSION_OFFSET);
+
+    if (version != Journal.VERSION) {
+      throw new IOException("Unsupported journal version: " + version);
+    }
+
+    final int recordSize = buffer.getInt(Journal.RECORD_SIZE_OFFSET);
+    final int capacity = buffer.getInt(Journal.CAPACITY_OFFSET);
+
+    if (buffer.limit() < Journal.HEADER_SIZE + (long) capacity * recordSize) {
+      throw new IOException("Journal is truncated: " + path);
+    }
+
+    final long openedNanos = buffer.getLong(Journal.OPENED_NANOS_OFFSET);
+    final Instant openedAt = Instant.ofEpochMilli(buffer.getLong(Journal.OPENED_MILLIS_OFFSET));
+    final List<String> types = readTypes(buffer);
+    final List<JournalRecord> records = new ArrayList<>();
+
+    for (int slot = 0; slot < capacity; slot++) {
+      final int offset = Journal.HEADER_SIZE + slot * recordSize;
+      final long sequence = buffer.getLong(offset + Journal.SEQUENCE_OFFSET) - 1;
+
+      /* never written, or only partially written */
+      if (sequence < 0 || sequence % capacity != slot) {
+        continue;
+      }
+
+      final int typeId = buffer.getInt(offset + Journal.TYPE_OFFSET);
+      final String type = typeId >= 0 && typeId < types.size() ? types.get(typeId) : null;
+
+      records.add(new JournalRecord(sequence,
+          buffer.getLong(offset + Journal.TIMESTAMP_OFFSET) - openedNanos,
+          buffer.getLong(offset + Journal.THREAD_OFFSET),
+          JournalEvent.fromCode(buffer.getInt(offset + Journal.EVENT_OFFSET)), type,
+          buffer.getLong(offset + Journal.VALUE_OFFSET)));
+    }
+
+    records.sort(Comparator.comparingLong(JournalRecord::getSequence));
+    return new Timeline(openedAt, records);
+  }
+
+  private static List<String> readTypes(final ByteBuffer buffer) {
+    final int count = buffer.getInt(Journal.TYPE_COUNT_OFFSET);
+    final List<String> types = new ArrayList<>(count);
+    final ByteBuffer table = buffer.duplicate();
+    table.position(Journal.TYPES_OFFSET);
+
+    for (int i = 0; i < count; i++) {
+      final byte[] name = new byte[table.getShort()];
+      table.get(name);
+      types.add(new String(name, StandardCharsets.UTF_8));
+    }
+
+    return types;
+  }
+
+  /**
+   * Print the timeline of the journal in the given file.
+   *
+   * @param args path of the journal file
+   * @throws IOException if the file could not be read, or is not a journal
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: JournalReader <journal>");
+      System.exit(1);
+    }
+
+    read(Paths.get(args[0])).print(System.out);
+  }
+}
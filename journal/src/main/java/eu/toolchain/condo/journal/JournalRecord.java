@@ -0,0 +1,32 @@
+package eu.toolchain.condo.journal;
+
+import lombok.Data;
+
+/**
+ * A decoded journal record.
+ */
+@Data
+public class JournalRecord {
+  /**
+   * Sequence number of the record, records are written in sequence order.
+   */
+  private final long sequence;
+  /**
+   * When the event happened, in nanoseconds since the journal was opened.
+   */
+  private final long nanos;
+  /**
+   * Id of the thread that caused the event.
+   */
+  private final long threadId;
+  private final JournalEvent event;
+  /**
+   * Name of the type of metadata, or {@code null} if the event has no metadata or the type is
+   * unknown.
+   */
+  private final String type;
+  /**
+   * Value of the event, see {@link JournalEvent} for what it means for each event.
+   */
+  private final long value;
+}
@@ -0,0 +1,33 @@
+package eu.toolchain.condo.journal;
+
+import lombok.Data;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Records decoded from a journal, in the order they were written.
+ */
+@Data
+public class Timeline {
+  /**
+   * When the journal was opened, according to the wall clock.
+   */
+  private final Instant openedAt;
+  private final List<JournalRecord> records;
+
+  /**
+   * Print the timeline with one record per line.
+   *
+   * @param out stream to print to
+   */
+  public void print(final PrintStream out) {
+    out.println("# opened at " + openedAt);
+
+    for (final JournalRecord r : records) {
+      out.printf("%d %.6f thread=%d %s %s %d%n", r.getSequence(), r.getNanos() / 1e9,
+          r.getThreadId(), r.getEvent(), r.getType() == null ? "-" : r.getType(), r.getValue());
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package eu.toolchain.condo.journal;
+
+import eu.toolchain.condo.Condo;
+import eu.toolchain.condo.CoreCondo;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class JournalTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testTimeline() throws Exception {
+    final Path path = folder.newFile().toPath();
+
+    try (final Journal journal = Journal.open(path, 16)) {
+      final Condo<String> condo =
+          CoreCondo.<String>builder().executor(Runnable::run).listener(journal).build();
+
+      final Predicate<String> mask = metadata -> true;
+
+      condo.mask(mask);
+      condo.schedule("action", () -> null);
+      condo.unmask(mask);
+    }
+
+    final List<JournalRecord> records = JournalReader.read(path).getRecords();
+
+    assertThat(events(records), is(new JournalEvent[]{
+        JournalEvent.MASKED, JournalEvent.SCHEDULED, JournalEvent.DEFERRED, JournalEvent.RELEASED,
+        JournalEvent.UNMASKED, JournalEvent.STARTED, JournalEvent.COMPLETED
+    }));
+
+    assertThat(records.get(0).getType(), is((String) null));
+    assertThat(records.get(1).getType(), is(String.class.getName()));
+    assertThat(records.get(1).getThreadId(), is(Thread.currentThread().getId()));
+    assertThat(records.get(4).getValue(), is(1L));
+  }
+
+  @Test
+  public void testRingWraps() throws Exception {
+    final Path path = folder.newFile().toPath();
+
+    try (final Journal journal = Journal.open(path, 4)) {
+      final Condo<String> condo =
+          CoreCondo.<String>builder().executor(Runnable::run).listener(journal).build();
+
+      for (int i = 0; i < 3; i++) {
+        condo.schedule("action", () -> null);
+      }
+    }
+
+    final List<JournalRecord> records = JournalReader.read(path).getRecords();
+
+    assertThat(records.stream().map(JournalRecord::getSequence).toArray(), is(new Object[]{
+        5L, 6L, 7L, 8L
+    }));
+    assertThat(events(records), is(new JournalEvent[]{
+        JournalEvent.COMPLETED, JournalEvent.SCHEDULED, JournalEvent.STARTED, JournalEvent.COMPLETED
+    }));
+  }
+
+  private static JournalEvent[] events(final List<JournalRecord> records) {
+    return records.stream().map(JournalRecord::getEvent).toArray(JournalEvent[]::new);
+  }
+}
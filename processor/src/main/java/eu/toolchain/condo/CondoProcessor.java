@@ -6,10 +6,13 @@ import com.google.common.base.Converter;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
 import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
 import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
@@ -38,9 +41,12 @@ import javax.tools.Diagnostic;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Stream;
 
 @AutoService(Processor.class)
@@ -78,10 +84,15 @@ public class CondoProcessor extends AbstractProcessor {
   public boolean process(
       final Set<? extends TypeElement> annotations, final RoundEnvironment env
   ) {
+    /* rounds which do not have any annotated interfaces do not need to look up any types */
+    if (annotations.isEmpty()) {
+      return false;
+    }
+
+    final RoundTypes roundTypes = RoundTypes.lookup(this.elements);
     final List<JavaFile> files = new ArrayList<>();
 
-    final Set<? extends Element> elements =
-        env.getElementsAnnotatedWith(this.elements.getTypeElement(AUTO_CONDO));
+    final Set<? extends Element> elements = env.getElementsAnnotatedWith(roundTypes.autoCondo);
 
     for (final Element element : elements) {
       if (!(element instanceof TypeElement)) {
@@ -98,7 +109,7 @@ public class CondoProcessor extends AbstractProcessor {
         continue;
       }
 
-      files.add(processImpl(typeElement));
+      files.add(processImpl(typeElement, roundTypes));
       files.add(processMetadata(typeElement));
     }
 
@@ -114,10 +125,7 @@ public class CondoProcessor extends AbstractProcessor {
     return true;
   }
 
-  private JavaFile processImpl(final TypeElement typeElement) {
-    final TypeElement completableFutureType =
-        elements.getTypeElement(CompletableFuture.class.getCanonicalName());
-
+  private JavaFile processImpl(final TypeElement typeElement, final RoundTypes roundTypes) {
     final String packageName = elements.getPackageOf(typeElement).getQualifiedName().toString();
     final String className =
         MessageFormat.format(IMPLEMENTATION_NAME_FORMAT, typeElement.getSimpleName());
@@ -147,6 +155,8 @@ public class CondoProcessor extends AbstractProcessor {
 
     final TypeSpec.Builder typeSpec = TypeSpec.classBuilder(className);
 
+    /* the annotated interface is the only originating element, which keeps this isolating */
+    typeSpec.addOriginatingElement(typeElement);
     typeSpec.addAnnotation(generatedAnnotation);
     typeSpec.addSuperinterface(interfaceType);
     typeSpec.addField(condoField);
@@ -206,25 +216,39 @@ public class CondoProcessor extends AbstractProcessor {
       delegateOnly.add(methodName);
       delegateParameters.forEach(delegateOnly::add);
 
+      final Object[] directArgs = delegateOnly.build().toArray(Object[]::new);
+
       if (TypeKind.VOID == returnType.getKind()) {
         final Object[] args =
-            Stream.concat(arguments.build(), delegateOnly.build()).toArray(Object[]::new);
+            Stream.concat(arguments.build(), Stream.of(directArgs)).toArray(Object[]::new);
+
+        /* inactive condos are bypassed without allocating any metadata */
+        methodSpec.beginControlFlow("if (!$N.isActive())", condoField);
+        methodSpec.addStatement(String.format("$N.$L(%s)", delegateFormat), directArgs);
+        methodSpec.addStatement("return");
+        methodSpec.endControlFlow();
 
         methodSpec.addStatement(
             String.format("$N.schedule(new $T.$L(%s), () -> { $N.$L(%s); return null; })",
                 metadataFormat, delegateFormat), args);
-      } else if (TypeKind.DECLARED == returnType.getKind() &&
-          ((DeclaredType) returnType).asElement().equals(completableFutureType)) {
-        final Object[] args =
-            Stream.concat(arguments.build(), delegateOnly.build()).toArray(Object[]::new);
-
-        methodSpec.addStatement(
-            String.format("return $N.scheduleAsync(new $T.$L(%s), () -> $N.$L(%s))", metadataFormat,
-                delegateFormat), args);
       } else {
-        final Object[] args = delegateOnly.build().toArray(Object[]::new);
-
-        methodSpec.addStatement(String.format("return $N.$L(%s)", delegateFormat), args);
+        final Object[] args =
+            Stream.concat(arguments.build(), Stream.of(directArgs)).toArray(Object[]::new);
+
+        methodSpec.beginControlFlow("if (!$N.isActive())", condoField);
+        methodSpec.addStatement(String.format("return $N.$L(%s)", delegateFormat), directArgs);
+        methodSpec.endControlFlow();
+
+        if (roundTypes.isStage(returnType)) {
+          methodSpec.addStatement(
+              String.format("return $N.scheduleAsync(new $T.$L(%s), () -> $N.$L(%s))",
+                  metadataFormat, delegateFormat), args);
+        } else {
+          /* anything else, including plain futures, is returned once the delegate returns */
+          methodSpec.addStatement(
+              String.format("return $N.invoke(new $T.$L(%s), () -> $N.$L(%s))", metadataFormat,
+                  delegateFormat), args);
+        }
       }
 
       typeSpec.addMethod(methodSpec.build());
@@ -272,6 +296,7 @@ public class CondoProcessor extends AbstractProcessor {
 
     final TypeSpec.Builder typeSpec = TypeSpec.interfaceBuilder(metadataType);
 
+    typeSpec.addOriginatingElement(typeElement);
     typeSpec.addAnnotation(generatedAnnotation);
 
     for (final Element element : typeElement.getEnclosedElements()) {
@@ -334,6 +359,14 @@ public class CondoProcessor extends AbstractProcessor {
         childTypeSpec.addMethod(methodSpec.build());
       }
 
+      final ClassName childType =
+          metadataType.nestedClass(METADATA_TYPE_CONVERTER.convert(methodName));
+
+      childTypeSpec.addMethod(processMatching(metadataType, childType, fields));
+      childTypeSpec.addMethod(processEquals(childType, fields));
+      childTypeSpec.addMethod(processHashCode(fields));
+      childTypeSpec.addMethod(processToString(metadataType, childType, fields));
+
       typeSpec.addType(childTypeSpec.build());
     }
 
@@ -344,6 +377,162 @@ public class CondoProcessor extends AbstractProcessor {
         .build();
   }
 
+  /**
+   * Generate a factory for an exact predicate matching metadata with the given field values.
+   */
+  private MethodSpec processMatching(
+      final ClassName metadataType, final ClassName childType, final List<FieldSpec> fields
+  ) {
+    final MethodSpec.Builder methodSpec = MethodSpec.methodBuilder("matching");
+
+    methodSpec.addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+    methodSpec.returns(
+        ParameterizedTypeName.get(ClassName.get(ExactPredicate.class), metadataType));
+
+    final List<String> formatParts = new ArrayList<>();
+
+    for (final FieldSpec fieldSpec : fields) {
+      final ParameterSpec parameterSpec =
+          ParameterSpec.builder(fieldSpec.type, fieldSpec.name, Modifier.FINAL).build();
+
+      methodSpec.addParameter(parameterSpec);
+      formatParts.add("$N");
+    }
+
+    final Object[] args = Stream
+        .concat(Stream.of(ExactPredicate.class, childType), fields.stream())
+        .toArray(Object[]::new);
+
+    methodSpec.addStatement(
+        String.format("return $T.of(new $T(%s))", PARAMETER_JOINER.join(formatParts)), args);
+    return methodSpec.build();
+  }
+
+  private MethodSpec processEquals(final ClassName childType, final List<FieldSpec> fields) {
+    final NameAllocator names = localNames(fields);
+    final String o = names.newName("o");
+    final String other = names.newName("other");
+
+    final MethodSpec.Builder methodSpec = MethodSpec.methodBuilder("equals");
+
+    methodSpec.addAnnotation(Override.class);
+    methodSpec.addModifiers(Modifier.PUBLIC);
+    methodSpec.returns(TypeName.BOOLEAN);
+    methodSpec.addParameter(ParameterSpec.builder(Object.class, o, Modifier.FINAL).build());
+
+    if (fields.isEmpty()) {
+      methodSpec.addStatement("return $N instanceof $T", o, childType);
+      return methodSpec.build();
+    }
+
+    methodSpec.beginControlFlow("if (this == $N)", o);
+    methodSpec.addStatement("return true");
+    methodSpec.endControlFlow();
+
+    methodSpec.beginControlFlow("if (!($N instanceof $T))", o, childType);
+    methodSpec.addStatement("return false");
+    methodSpec.endControlFlow();
+
+    methodSpec.addStatement("final $T $N = ($T) $N", childType, other, childType, o);
+
+    final CodeBlock.Builder result = CodeBlock.builder();
+
+    for (final FieldSpec fieldSpec : fields) {
+      if (fieldSpec != fields.get(0)) {
+        result.add(" && ");
+      }
+
+      if (fieldSpec.type instanceof ArrayTypeName) {
+        result.add("$T.equals(this.$N, $N.$N)", Arrays.class, fieldSpec, other, fieldSpec);
+      } else if (fieldSpec.type.equals(TypeName.FLOAT) || fieldSpec.type.equals(TypeName.DOUBLE)) {
+        result.add("$T.compare(this.$N, $N.$N) == 0", fieldSpec.type.box(), fieldSpec, other,
+            fieldSpec);
+      } else if (fieldSpec.type.isPrimitive()) {
+        result.add("this.$N == $N.$N", fieldSpec, other, fieldSpec);
+      } else {
+        result.add("$T.equals(this.$N, $N.$N)", Objects.class, fieldSpec, other, fieldSpec);
+      }
+    }
+
+    methodSpec.addStatement("return $L", result.build());
+    return methodSpec.build();
+  }
+
+  private MethodSpec processHashCode(final List<FieldSpec> fields) {
+    final MethodSpec.Builder methodSpec = MethodSpec.methodBuilder("hashCode");
+
+    methodSpec.addAnnotation(Override.class);
+    methodSpec.addModifiers(Modifier.PUBLIC);
+    methodSpec.returns(TypeName.INT);
+
+    if (fields.isEmpty()) {
+      methodSpec.addStatement("return 1");
+      return methodSpec.build();
+    }
+
+    final String result = localNames(fields).newName("result");
+
+    methodSpec.addStatement("int $N = 1", result);
+
+    for (final FieldSpec fieldSpec : fields) {
+      final TypeName hasher;
+
+      if (fieldSpec.type instanceof ArrayTypeName) {
+        hasher = ClassName.get(Arrays.class);
+      } else if (fieldSpec.type.isPrimitive()) {
+        hasher = fieldSpec.type.box();
+      } else {
+        hasher = ClassName.get(Objects.class);
+      }
+
+      methodSpec.addStatement("$N = 31 * $N + $T.hashCode(this.$N)", result, result, hasher,
+          fieldSpec);
+    }
+
+    methodSpec.addStatement("return $N", result);
+    return methodSpec.build();
+  }
+
+  /**
+   * Allocate names for locals in generated methods that do not shadow any of the given fields.
+   */
+  private NameAllocator localNames(final List<FieldSpec> fields) {
+    final NameAllocator names = new NameAllocator();
+
+    for (final FieldSpec fieldSpec : fields) {
+      names.newName(fieldSpec.name, fieldSpec);
+    }
+
+    return names;
+  }
+
+  private MethodSpec processToString(
+      final ClassName metadataType, final ClassName childType, final List<FieldSpec> fields
+  ) {
+    final MethodSpec.Builder methodSpec = MethodSpec.methodBuilder("toString");
+
+    methodSpec.addAnnotation(Override.class);
+    methodSpec.addModifiers(Modifier.PUBLIC);
+    methodSpec.returns(String.class);
+
+    final CodeBlock.Builder result = CodeBlock.builder();
+    String prefix = metadataType.simpleName() + "." + childType.simpleName() + "(";
+
+    for (final FieldSpec fieldSpec : fields) {
+      final String value = fieldSpec.type instanceof ArrayTypeName ? "$T.toString($N)" : "$N";
+      final Object[] args = fieldSpec.type instanceof ArrayTypeName ?
+          new Object[]{prefix + fieldSpec.name + "=", Arrays.class, fieldSpec} :
+          new Object[]{prefix + fieldSpec.name + "=", fieldSpec};
+
+      result.add("$S + " + value + " + ", args);
+      prefix = ", ";
+    }
+
+    result.add("$S", fields.isEmpty() ? prefix + ")" : ")");
+    methodSpec.addStatement("return $L", result.build());
+    return methodSpec.build();
+  }
+
   @Override
   public SourceVersion getSupportedSourceVersion() {
     return SourceVersion.latestSupported();
@@ -353,4 +542,43 @@ public class CondoProcessor extends AbstractProcessor {
   public Set<String> getSupportedAnnotationTypes() {
     return ImmutableSet.of(AUTO_CONDO);
   }
+
+  /**
+   * Types which are looked up once per round, instead of once per annotated interface.
+   */
+  static final class RoundTypes {
+    private final TypeElement autoCondo;
+    private final TypeElement completableFuture;
+    private final TypeElement completionStage;
+
+    private RoundTypes(
+        final TypeElement autoCondo, final TypeElement completableFuture,
+        final TypeElement completionStage
+    ) {
+      this.autoCondo = autoCondo;
+      this.completableFuture = completableFuture;
+      this.completionStage = completionStage;
+    }
+
+    /**
+     * Check if the given return type can be scheduled as an asynchronous action.
+     *
+     * <p>Only {@code CompletableFuture} and {@code CompletionStage} are, since the future returned
+     * by {@code Condo#scheduleAsync} is not assignable to any other type of stage.
+     */
+    boolean isStage(final TypeMirror returnType) {
+      if (TypeKind.DECLARED != returnType.getKind()) {
+        return false;
+      }
+
+      final Element element = ((DeclaredType) returnType).asElement();
+      return element.equals(completableFuture) || element.equals(completionStage);
+    }
+
+    static RoundTypes lookup(final Elements elements) {
+      return new RoundTypes(elements.getTypeElement(AUTO_CONDO),
+          elements.getTypeElement(CompletableFuture.class.getCanonicalName()),
+          elements.getTypeElement(CompletionStage.class.getCanonicalName()));
+    }
+  }
 }
@@ -20,6 +20,11 @@ public class CondoProcessorTest {
     verifySerializer("Basic");
   }
 
+  @Test
+  public void testShadowing() {
+    verifySerializer("Shadowing");
+  }
+
   static void verifySerializer(String name) {
     verifySerializer(name, MessageFormat.format(CondoProcessor.IMPLEMENTATION_NAME_FORMAT, name),
         MessageFormat.format(CondoProcessor.METADATA_NAME_FORMAT, name));
@@ -1,6 +1,7 @@
 package eu.toolchain.condo;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @AutoCondo
 interface Basic {
@@ -10,5 +11,7 @@ interface Basic {
 
   CompletableFuture<Void> getInteger(int argument);
 
+  CompletionStage<String> getString(int argument);
+
   CompletableFuture<Void> skipParameter(int argument, @AutoCondo.Skip int ignored);
 }
@@ -7,11 +7,49 @@ interface BasicMetadata {
   class DoSomething implements BasicMetadata {
     public DoSomething() {
     }
+
+    public static ExactPredicate<BasicMetadata> matching() {
+      return ExactPredicate.of(new DoSomething());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof DoSomething;
+    }
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+
+    @Override
+    public String toString() {
+      return "BasicMetadata.DoSomething()";
+    }
   }
 
   class CheckSomething implements BasicMetadata {
     public CheckSomething() {
     }
+
+    public static ExactPredicate<BasicMetadata> matching() {
+      return ExactPredicate.of(new CheckSomething());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof CheckSomething;
+    }
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+
+    @Override
+    public String toString() {
+      return "BasicMetadata.CheckSomething()";
+    }
   }
 
   class GetInteger implements BasicMetadata {
@@ -24,17 +62,113 @@ interface BasicMetadata {
     public int argument() {
       return argument;
     }
+
+    public static ExactPredicate<BasicMetadata> matching(final int argument) {
+      return ExactPredicate.of(new GetInteger(argument));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof GetInteger)) {
+        return false;
+      }
+      final GetInteger other = (GetInteger) o;
+      return this.argument == other.argument;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 1;
+      result = 31 * result + Integer.hashCode(this.argument);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "BasicMetadata.GetInteger(argument=" + argument + ")";
+    }
+  }
+
+  class GetString implements BasicMetadata {
+    private final int argument;
+
+    public GetString(final int argument) {
+      this.argument = argument;
+    }
+
+    public int argument() {
+      return argument;
+    }
+
+    public static ExactPredicate<BasicMetadata> matching(final int argument) {
+      return ExactPredicate.of(new GetString(argument));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof GetString)) {
+        return false;
+      }
+      final GetString other = (GetString) o;
+      return this.argument == other.argument;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 1;
+      result = 31 * result + Integer.hashCode(this.argument);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "BasicMetadata.GetString(argument=" + argument + ")";
+    }
   }
 
   class SkipParameter implements BasicMetadata {
     private final int argument;
 
-    public GetInteger(final int argument) {
+    public SkipParameter(final int argument) {
       this.argument = argument;
     }
 
     public int argument() {
       return argument;
     }
+
+    public static ExactPredicate<BasicMetadata> matching(final int argument) {
+      return ExactPredicate.of(new SkipParameter(argument));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SkipParameter)) {
+        return false;
+      }
+      final SkipParameter other = (SkipParameter) o;
+      return this.argument == other.argument;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 1;
+      result = 31 * result + Integer.hashCode(this.argument);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "BasicMetadata.SkipParameter(argument=" + argument + ")";
+    }
   }
 }
@@ -1,6 +1,7 @@
 package eu.toolchain.condo;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import javax.annotation.Generated;
 
 @Generated("eu.toolchain.condo.CondoProcessor")
@@ -15,21 +16,42 @@ class Basic_Condo implements Basic {
 
   @Override
   public void doSomething() {
+    if (!condo.isActive()) {
+      delegate.doSomething();
+      return;
+    }
     condo.schedule(new BasicMetadata.DoSomething(), () -> { delegate.doSomething(); return null; });
   }
 
   @Override
   public boolean checkSomething() {
-    return delegate.checkSomething();
+    if (!condo.isActive()) {
+      return delegate.checkSomething();
+    }
+    return condo.invoke(new BasicMetadata.CheckSomething(), () -> delegate.checkSomething());
   }
 
   @Override
   public CompletableFuture<Void> getInteger(final int argument) {
+    if (!condo.isActive()) {
+      return delegate.getInteger(argument);
+    }
     return condo.scheduleAsync(new BasicMetadata.GetInteger(argument), () -> delegate.getInteger(argument));
   }
 
+  @Override
+  public CompletionStage<String> getString(final int argument) {
+    if (!condo.isActive()) {
+      return delegate.getString(argument);
+    }
+    return condo.scheduleAsync(new BasicMetadata.GetString(argument), () -> delegate.getString(argument));
+  }
+
   @Override
   public CompletableFuture<Void> skipParameter(final int argument, final int ignored) {
+    if (!condo.isActive()) {
+      return delegate.skipParameter(argument, ignored);
+    }
     return condo.scheduleAsync(new BasicMetadata.SkipParameter(argument), () -> delegate.skipParameter(argument, ignored));
   }
 }
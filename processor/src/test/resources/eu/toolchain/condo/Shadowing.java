@@ -0,0 +1,8 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.CompletableFuture;
+
+@AutoCondo
+interface Shadowing {
+  CompletableFuture<Void> shadow(Object o, String other, int result);
+}
@@ -0,0 +1,62 @@
+package eu.toolchain.condo;
+
+import java.util.Objects;
+import javax.annotation.Generated;
+
+@Generated("eu.toolchain.condo.CondoProcessor")
+interface ShadowingMetadata {
+  class Shadow implements ShadowingMetadata {
+    private final Object o;
+    private final String other;
+    private final int result;
+
+    public Shadow(final Object o, final String other, final int result) {
+      this.o = o;
+      this.other = other;
+      this.result = result;
+    }
+
+    public Object o() {
+      return o;
+    }
+
+    public String other() {
+      return other;
+    }
+
+    public int result() {
+      return result;
+    }
+
+    public static ExactPredicate<ShadowingMetadata> matching(final Object o, final String other,
+        final int result) {
+      return ExactPredicate.of(new Shadow(o, other, result));
+    }
+
+    @Override
+    public boolean equals(final Object o_) {
+      if (this == o_) {
+        return true;
+      }
+      if (!(o_ instanceof Shadow)) {
+        return false;
+      }
+      final Shadow other_ = (Shadow) o_;
+      return Objects.equals(this.o, other_.o) && Objects.equals(this.other, other_.other) && this.result == other_.result;
+    }
+
+    @Override
+    public int hashCode() {
+      int result_ = 1;
+      result_ = 31 * result_ + Objects.hashCode(this.o);
+      result_ = 31 * result_ + Objects.hashCode(this.other);
+      result_ = 31 * result_ + Integer.hashCode(this.result);
+      return result_;
+    }
+
+    @Override
+    public String toString() {
+      return "ShadowingMetadata.Shadow(o=" + o + ", other=" + other + ", result=" + result + ")";
+    }
+  }
+}
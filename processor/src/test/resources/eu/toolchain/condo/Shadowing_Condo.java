@@ -0,0 +1,23 @@
+package eu.toolchain.condo;
+
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Generated;
+
+@Generated("eu.toolchain.condo.CondoProcessor")
+class Shadowing_Condo implements Shadowing {
+  private final Condo<ShadowingMetadata> condo;
+  private final Shadowing delegate;
+
+  public Shadowing_Condo(final Condo<ShadowingMetadata> condo, final Shadowing delegate) {
+    this.condo = condo;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public CompletableFuture<Void> shadow(final Object o, final String other, final int result) {
+    if (!condo.isActive()) {
+      return delegate.shadow(o, other, result);
+    }
+    return condo.scheduleAsync(new ShadowingMetadata.Shadow(o, other, result), () -> delegate.shadow(o, other, result));
+  }
+}